@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.BNodeImpl;
+import org.openrdf.model.impl.StatementImpl;
+
+/**
+ * Brings statements into a reproducible order. Blank nodes are ordered by the
+ * statements they are used in and relabeled in this order, so that equal
+ * graphs are serialized into equal files, independent of the store's internal
+ * blank node identifiers.
+ */
+class CanonicalStatements {
+	private final Map<BNode, String> signatures = new HashMap<BNode, String>();
+
+	private final Map<BNode, BNode> labels = new HashMap<BNode, BNode>();
+
+	private CanonicalStatements() {
+	}
+
+	/**
+	 * Sorts the given statements into canonical order and relabels their blank
+	 * nodes. The list is modified in place to avoid copying large models.
+	 * Contexts are not retained.
+	 */
+	static List<Statement> canonicalize(List<Statement> stmts) {
+		return new CanonicalStatements().sort(stmts);
+	}
+
+	private List<Statement> sort(List<Statement> sorted) {
+		computeSignatures(sorted);
+
+		Collections.sort(sorted, new Comparator<Statement>() {
+			public int compare(Statement a, Statement b) {
+				int diff = key(a.getSubject()).compareTo(key(b.getSubject()));
+				if (diff == 0) {
+					diff = key(a.getPredicate()).compareTo(
+							key(b.getPredicate()));
+				}
+				if (diff == 0) {
+					diff = key(a.getObject()).compareTo(key(b.getObject()));
+				}
+				return diff;
+			}
+		});
+
+		// relabel blank nodes in the order of their first occurrence
+		for (ListIterator<Statement> it = sorted.listIterator(); it.hasNext();) {
+			Statement stmt = it.next();
+			it.set(new StatementImpl((Resource) relabel(stmt.getSubject()),
+					stmt.getPredicate(), relabel(stmt.getObject())));
+		}
+		return sorted;
+	}
+
+	/**
+	 * Describes each blank node by the sorted keys of its outgoing and
+	 * incoming statements. Blank node neighbours are not expanded.
+	 */
+	private void computeSignatures(Collection<? extends Statement> stmts) {
+		Map<BNode, List<String>> edges = new HashMap<BNode, List<String>>();
+		for (Statement stmt : stmts) {
+			if (stmt.getSubject() instanceof BNode) {
+				edges(edges, (BNode) stmt.getSubject()).add(
+						key(stmt.getPredicate()) + " " + key(stmt.getObject()));
+			}
+			if (stmt.getObject() instanceof BNode) {
+				edges(edges, (BNode) stmt.getObject()).add(
+						"^" + key(stmt.getPredicate()) + " "
+								+ key(stmt.getSubject()));
+			}
+		}
+		for (Map.Entry<BNode, List<String>> entry : edges.entrySet()) {
+			List<String> nodeEdges = entry.getValue();
+			Collections.sort(nodeEdges);
+			StringBuilder signature = new StringBuilder("_:");
+			for (String edge : nodeEdges) {
+				signature.append(edge).append(';');
+			}
+			signatures.put(entry.getKey(), signature.toString());
+		}
+	}
+
+	private static List<String> edges(Map<BNode, List<String>> edges,
+			BNode node) {
+		List<String> nodeEdges = edges.get(node);
+		if (nodeEdges == null) {
+			nodeEdges = new ArrayList<String>();
+			edges.put(node, nodeEdges);
+		}
+		return nodeEdges;
+	}
+
+	private String key(Value value) {
+		if (value instanceof BNode) {
+			String signature = signatures.get(value);
+			// signatures are only available after they have been computed
+			return signature != null ? signature : "_:";
+		} else if (value instanceof Literal) {
+			Literal literal = (Literal) value;
+			return "\"" + literal.getLabel() + "\"@"
+					+ (literal.getLanguage() != null ? literal.getLanguage() : "")
+					+ "^^" + (literal.getDatatype() != null ? literal
+							.getDatatype() : "");
+		}
+		return "<" + value.stringValue() + ">";
+	}
+
+	private Value relabel(Value value) {
+		if (value instanceof BNode) {
+			BNode label = labels.get(value);
+			if (label == null) {
+				label = new BNodeImpl("node" + (labels.size() + 1));
+				labels.put((BNode) value, label);
+			}
+			return label;
+		}
+		return value;
+	}
+}
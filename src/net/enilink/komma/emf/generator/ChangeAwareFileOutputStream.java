@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * An output stream that replaces a file only if the written content differs
+ * from the existing content. The content is written to a temporary file in
+ * the same directory which is either moved to the target or deleted when the
+ * stream is closed. Unchanged files keep their modification time.
+ * <p>
+ * If writing fails then {@link #discard()} has to be called before closing
+ * the stream to keep the previous content of the file.
+ */
+class ChangeAwareFileOutputStream extends FilterOutputStream {
+	private final File file;
+
+	private final File tmpFile;
+
+	private final MessageDigest digest;
+
+	private boolean closed;
+
+	private boolean discarded;
+
+	private boolean changed;
+
+	public ChangeAwareFileOutputStream(File file) throws IOException {
+		this(file, File.createTempFile("tmp-" + file.getName(), null, file
+				.getAbsoluteFile().getParentFile()), createDigest());
+	}
+
+	private ChangeAwareFileOutputStream(File file, File tmpFile,
+			MessageDigest digest) throws IOException {
+		super(new DigestOutputStream(new FileOutputStream(tmpFile), digest));
+		this.file = file;
+		this.tmpFile = tmpFile;
+		this.digest = digest;
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		// FilterOutputStream writes single bytes by default
+		out.write(b, off, len);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			super.close();
+			if (discarded) {
+				return;
+			}
+			changed = !file.exists() || file.length() != tmpFile.length()
+					|| !Arrays.equals(digest.digest(), digest(file));
+			if (changed) {
+				// renameTo does not replace existing files on all platforms
+				file.delete();
+				if (!tmpFile.renameTo(file)) {
+					throw new IOException("Unable to write " + file);
+				}
+			}
+		} finally {
+			tmpFile.delete();
+		}
+	}
+
+	/**
+	 * Discards the written content when the stream is closed. The file
+	 * remains unchanged.
+	 */
+	public void discard() {
+		discarded = true;
+	}
+
+	/**
+	 * Returns <code>true</code> if the file was created or modified. Only
+	 * valid after the stream was closed.
+	 */
+	public boolean isChanged() {
+		return changed;
+	}
+
+	private static byte[] digest(File file) throws IOException {
+		MessageDigest digest = createDigest();
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return digest.digest();
+	}
+}
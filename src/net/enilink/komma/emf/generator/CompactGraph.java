@@ -0,0 +1,369 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+/**
+ * An immutable, dictionary-encoded in-memory graph. Each RDF term is
+ * identified by an int and all triples are stored in primitive arrays that
+ * are sorted by (predicate, subject, object) and by (predicate, object,
+ * subject). Lookups are binary searches within these arrays. Contexts are not
+ * retained and duplicate triples are removed.
+ * <p>
+ * Graphs are created with a {@link Builder} which can directly be used as
+ * handler of an RDF parser.
+ */
+class CompactGraph {
+	static final byte URI = 0;
+
+	static final byte BNODE = 1;
+
+	static final byte LITERAL = 2;
+
+	/** Returned for unknown terms */
+	static final int NONE = -1;
+
+	private static final int[] EMPTY = new int[0];
+
+	private final Map<String, Integer> uris;
+
+	/** URI, blank node id or literal label of each term */
+	private final String[] values;
+
+	private final byte[] kinds;
+
+	/** datatype URIs of typed literals */
+	private final Map<Integer, String> datatypes;
+
+	/** triples sorted by predicate, subject, object */
+	private final int[] psoP, psoS, psoO;
+
+	/** triples sorted by predicate, object, subject */
+	private final int[] posP, posO, posS;
+
+	private CompactGraph(Map<String, Integer> uris, String[] values,
+			byte[] kinds, Map<Integer, String> datatypes, int[] p, int[] s,
+			int[] o, int size) {
+		this.uris = uris;
+		this.values = values;
+		this.kinds = kinds;
+		this.datatypes = datatypes;
+
+		int[] order = sort(size, p, s, o);
+		// skip duplicate triples
+		int unique = 0;
+		for (int i = 0; i < size; i++) {
+			int t = order[i];
+			if (unique > 0) {
+				int prev = order[unique - 1];
+				if (p[prev] == p[t] && s[prev] == s[t] && o[prev] == o[t]) {
+					continue;
+				}
+			}
+			order[unique++] = t;
+		}
+		psoP = new int[unique];
+		psoS = new int[unique];
+		psoO = new int[unique];
+		for (int i = 0; i < unique; i++) {
+			psoP[i] = p[order[i]];
+			psoS[i] = s[order[i]];
+			psoO[i] = o[order[i]];
+		}
+		order = sort(unique, psoP, psoO, psoS);
+		posP = new int[unique];
+		posO = new int[unique];
+		posS = new int[unique];
+		for (int i = 0; i < unique; i++) {
+			posP[i] = psoP[order[i]];
+			posO[i] = psoO[order[i]];
+			posS[i] = psoS[order[i]];
+		}
+	}
+
+	/**
+	 * Returns the number of distinct triples.
+	 */
+	int size() {
+		return psoP.length;
+	}
+
+	/**
+	 * Returns the id of the given URI or {@link #NONE}.
+	 */
+	int id(String uri) {
+		Integer id = uris.get(uri);
+		return id != null ? id : NONE;
+	}
+
+	int kind(int id) {
+		return kinds[id];
+	}
+
+	boolean isUri(int id) {
+		return kinds[id] == URI;
+	}
+
+	/**
+	 * Returns the URI, the label of a literal or the id of a blank node.
+	 */
+	String value(int id) {
+		return values[id];
+	}
+
+	/**
+	 * Returns the datatype URI of a typed literal or <code>null</code>.
+	 */
+	String datatype(int id) {
+		return datatypes.get(id);
+	}
+
+	/**
+	 * Returns the objects of all triples with the given subject and
+	 * predicate.
+	 */
+	int[] objects(int subject, int predicate) {
+		return select(psoP, psoS, psoO, predicate, subject);
+	}
+
+	/**
+	 * Returns the subjects of all triples with the given predicate and
+	 * object.
+	 */
+	int[] subjects(int predicate, int object) {
+		return select(posP, posO, posS, predicate, object);
+	}
+
+	/**
+	 * Returns the distinct subjects of all triples with the given predicate.
+	 */
+	int[] subjects(int predicate) {
+		if (predicate == NONE) {
+			return EMPTY;
+		}
+		int from = lowerBound(psoP, psoS, predicate, Integer.MIN_VALUE);
+		int to = lowerBound(psoP, psoS, predicate, Integer.MAX_VALUE);
+		int[] result = new int[to - from];
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			if (count == 0 || result[count - 1] != psoS[i]) {
+				result[count++] = psoS[i];
+			}
+		}
+		return count == result.length ? result : Arrays.copyOf(result, count);
+	}
+
+	boolean contains(int subject, int predicate, int object) {
+		if (subject == NONE || predicate == NONE || object == NONE) {
+			return false;
+		}
+		int i = lowerBound(psoP, psoS, predicate, subject);
+		for (; i < psoP.length && psoP[i] == predicate && psoS[i] == subject; i++) {
+			if (psoO[i] == object) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the elements of the RDF list that starts with the given node.
+	 */
+	int[] list(int head, int first, int rest, int nil) {
+		int[] elements = new int[4];
+		int count = 0;
+		int node = head;
+		// the number of steps is limited to protect against cyclic lists
+		for (int steps = 0; node != nil && node != NONE && steps <= size(); steps++) {
+			int[] values = objects(node, first);
+			if (values.length == 0) {
+				break;
+			}
+			if (count == elements.length) {
+				elements = Arrays.copyOf(elements, count * 2);
+			}
+			elements[count++] = values[0];
+			int[] next = objects(node, rest);
+			node = next.length > 0 ? next[0] : NONE;
+		}
+		return Arrays.copyOf(elements, count);
+	}
+
+	private static int[] select(int[] a, int[] b, int[] c, int first,
+			int second) {
+		if (first == NONE || second == NONE) {
+			return EMPTY;
+		}
+		int from = lowerBound(a, b, first, second);
+		int to = from;
+		while (to < a.length && a[to] == first && b[to] == second) {
+			to++;
+		}
+		return from == to ? EMPTY : Arrays.copyOfRange(c, from, to);
+	}
+
+	/**
+	 * Returns the first position whose key (a[i], b[i]) is not less than the
+	 * given key.
+	 */
+	private static int lowerBound(int[] a, int[] b, int first, int second) {
+		int low = 0, high = a.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (a[mid] < first || (a[mid] == first && b[mid] < second)) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the positions of the first <code>size</code> triples sorted by
+	 * the keys a, b and c.
+	 */
+	private static int[] sort(int size, int[] a, int[] b, int[] c) {
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		mergeSort(order, new int[size], 0, size, a, b, c);
+		return order;
+	}
+
+	private static void mergeSort(int[] order, int[] tmp, int from, int to,
+			int[] a, int[] b, int[] c) {
+		if (to - from < 2) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(order, tmp, from, mid, a, b, c);
+		mergeSort(order, tmp, mid, to, a, b, c);
+		if (compare(order[mid - 1], order[mid], a, b, c) <= 0) {
+			return;
+		}
+		System.arraycopy(order, from, tmp, from, to - from);
+		int i = from, j = mid;
+		for (int k = from; k < to; k++) {
+			if (j >= to || (i < mid && compare(tmp[i], tmp[j], a, b, c) <= 0)) {
+				order[k] = tmp[i++];
+			} else {
+				order[k] = tmp[j++];
+			}
+		}
+	}
+
+	private static int compare(int x, int y, int[] a, int[] b, int[] c) {
+		if (a[x] != a[y]) {
+			return a[x] < a[y] ? -1 : 1;
+		}
+		if (b[x] != b[y]) {
+			return b[x] < b[y] ? -1 : 1;
+		}
+		return c[x] < c[y] ? -1 : (c[x] == c[y] ? 0 : 1);
+	}
+
+	/**
+	 * Collects statements and encodes their terms.
+	 */
+	static class Builder extends RDFHandlerBase {
+		private final Map<String, Integer> uris = new HashMap<String, Integer>();
+
+		private final Map<String, Integer> bnodes = new HashMap<String, Integer>();
+
+		private final Map<String, Integer> literals = new HashMap<String, Integer>();
+
+		private final Map<Integer, String> datatypes = new HashMap<Integer, String>();
+
+		private String[] values = new String[1024];
+
+		private byte[] kinds = new byte[1024];
+
+		private int terms;
+
+		private int[] p = new int[1024], s = new int[1024], o = new int[1024];
+
+		private int size;
+
+		@Override
+		public void handleStatement(Statement stmt) {
+			add(stmt);
+		}
+
+		void add(Statement stmt) {
+			if (size == p.length) {
+				int capacity = size * 2;
+				p = Arrays.copyOf(p, capacity);
+				s = Arrays.copyOf(s, capacity);
+				o = Arrays.copyOf(o, capacity);
+			}
+			s[size] = encode(stmt.getSubject());
+			p[size] = encode(stmt.getPredicate());
+			o[size] = encode(stmt.getObject());
+			size++;
+		}
+
+		private int encode(Value value) {
+			if (value instanceof BNode) {
+				return encode(bnodes, value.stringValue(),
+						value.stringValue(), BNODE);
+			} else if (value instanceof Literal) {
+				Literal literal = (Literal) value;
+				String key = literal.getLabel() + '\u0000'
+						+ (literal.getLanguage() != null ? literal
+								.getLanguage() : "") + '\u0000'
+						+ (literal.getDatatype() != null ? literal
+								.getDatatype() : "");
+				int id = encode(literals, key, literal.getLabel(), LITERAL);
+				if (literal.getDatatype() != null) {
+					datatypes.put(id, literal.getDatatype().stringValue());
+				}
+				return id;
+			}
+			return encode(uris, value.stringValue(), value.stringValue(), URI);
+		}
+
+		private int encode(Map<String, Integer> dictionary, String key,
+				String value, byte kind) {
+			Integer id = dictionary.get(key);
+			if (id == null) {
+				if (terms == values.length) {
+					values = Arrays.copyOf(values, terms * 2);
+					kinds = Arrays.copyOf(kinds, terms * 2);
+				}
+				id = terms++;
+				dictionary.put(key, id);
+				values[id] = value;
+				kinds[id] = kind;
+			}
+			return id;
+		}
+
+		/**
+		 * Creates the graph from all statements that were added so far.
+		 */
+		CompactGraph build() {
+			return new CompactGraph(new HashMap<String, Integer>(uris), Arrays
+					.copyOf(values, terms), Arrays.copyOf(kinds, terms),
+					new HashMap<Integer, String>(datatypes), p, s, o, size);
+		}
+	}
+}
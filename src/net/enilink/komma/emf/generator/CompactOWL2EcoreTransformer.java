@@ -0,0 +1,543 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.eclipse.emf.ecore.EAnnotation;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EDataType;
+import org.eclipse.emf.ecore.EEnum;
+import org.eclipse.emf.ecore.EEnumLiteral;
+import org.eclipse.emf.ecore.EModelElement;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.util.InternalEList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.enilink.vocab.owl.OWL;
+import net.enilink.vocab.rdfs.RDFS;
+import net.enilink.vocab.xmlschema.XMLSCHEMA;
+
+/**
+ * Transforms OWL classes into Ecore models like {@link OWL2EcoreTransformer}
+ * but reads the ontology from a {@link CompactGraph} instead of using KOMMA
+ * entities. Type checks and property accesses are array lookups instead of
+ * proxy calls and queries.
+ * <p>
+ * The created elements, their order and all annotations are equal to those
+ * of {@link OWL2EcoreTransformer}, whose post-processing (features, super
+ * types and annotations) is reused by this class.
+ */
+class CompactOWL2EcoreTransformer extends OWL2EcoreTransformer {
+	private static final String RDF_NAMESPACE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+
+	private static final String XSD_NAMESPACE = "http://www.w3.org/2001/XMLSchema#";
+
+	private static final Map<String, EDataType> DATATYPES = new HashMap<String, EDataType>();
+	static {
+		EcorePackage ecore = EcorePackage.eINSTANCE;
+		DATATYPES.put(XMLSCHEMA.TYPE_BOOLEAN.toString(), ecore.getEBoolean());
+		DATATYPES.put(XMLSCHEMA.TYPE_FLOAT.toString(), ecore.getEFloat());
+		DATATYPES.put(XMLSCHEMA.TYPE_INT.toString(), ecore.getEInt());
+		DATATYPES.put(XMLSCHEMA.TYPE_INTEGER.toString(), ecore.getEInt());
+		DATATYPES.put(XMLSCHEMA.TYPE_BYTE.toString(), ecore.getEByte());
+		DATATYPES.put(XMLSCHEMA.TYPE_LONG.toString(), ecore.getELong());
+		DATATYPES.put(XMLSCHEMA.TYPE_DOUBLE.toString(), ecore.getEDouble());
+		DATATYPES.put(XMLSCHEMA.TYPE_SHORT.toString(), ecore.getEShort());
+		DATATYPES.put(XMLSCHEMA.TYPE_STRING.toString(), ecore.getEString());
+	}
+
+	final Logger logger = LoggerFactory
+			.getLogger(CompactOWL2EcoreTransformer.class);
+
+	private final CompactGraph graph;
+
+	private final int type, first, rest, nil;
+
+	private final int owlClass, rdfsClass, rdfsDatatype, dataRange;
+
+	private final int objectProperty, transitiveProperty, symmetricProperty,
+			inverseFunctionalProperty, functionalProperty;
+
+	private final int subClassOf, subPropertyOf, domain, range, inverseOf,
+			oneOf, disjointWith, comment, label, isDefinedBy;
+
+	/** term id -&gt; element */
+	private final Map<Integer, EModelElement> elements = new HashMap<Integer, EModelElement>();
+
+	/** same order as {@link OWL2EcoreTransformer}'s value order */
+	private final Comparator<Integer> valueOrder = new Comparator<Integer>() {
+		public int compare(Integer a, Integer b) {
+			return key(a).compareTo(key(b));
+		}
+
+		private String key(int id) {
+			return graph.kind(id) == CompactGraph.BNODE ? "" : graph
+					.value(id);
+		}
+	};
+
+	/** SPARQL order of resources: blank nodes before URIs */
+	private final Comparator<Integer> resourceOrder = new Comparator<Integer>() {
+		public int compare(Integer a, Integer b) {
+			int diff = graph.kind(b) - graph.kind(a);
+			if (diff == 0) {
+				diff = graph.value(a).compareTo(graph.value(b));
+			}
+			return diff;
+		}
+	};
+
+	public CompactOWL2EcoreTransformer(CompactGraph graph,
+			Map<String, EPackage> ePackages, Map<String, String> packages) {
+		super(ePackages, packages);
+		this.graph = graph;
+
+		type = id(RDF_NAMESPACE + "type");
+		first = id(RDF_NAMESPACE + "first");
+		rest = id(RDF_NAMESPACE + "rest");
+		nil = id(RDF_NAMESPACE + "nil");
+
+		owlClass = id(OWL.NAMESPACE + "Class");
+		rdfsClass = id(RDFS.NAMESPACE + "Class");
+		rdfsDatatype = id(RDFS.NAMESPACE + "Datatype");
+		dataRange = id(OWL.NAMESPACE + "DataRange");
+
+		objectProperty = id(OWL.NAMESPACE + "ObjectProperty");
+		transitiveProperty = id(OWL.TYPE_TRANSITIVEPROPERTY.toString());
+		symmetricProperty = id(OWL.TYPE_SYMMETRICPROPERTY.toString());
+		inverseFunctionalProperty = id(OWL.TYPE_INVERSEFUNCTIONALPROPERTY
+				.toString());
+		functionalProperty = id(OWL.TYPE_FUNCTIONALPROPERTY.toString());
+
+		subClassOf = id(RDFS.NAMESPACE + "subClassOf");
+		subPropertyOf = id(RDFS.PROPERTY_SUBPROPERTYOF.toString());
+		domain = id(RDFS.NAMESPACE + "domain");
+		range = id(RDFS.NAMESPACE + "range");
+		inverseOf = id(OWL.NAMESPACE + "inverseOf");
+		oneOf = id(OWL.NAMESPACE + "oneOf");
+		disjointWith = id(OWL.PROPERTY_DISJOINTWITH.toString());
+		comment = id(RDFS.PROPERTY_COMMENT.toString());
+		label = id(RDFS.PROPERTY_LABEL.toString());
+		isDefinedBy = id(RDFS.PROPERTY_ISDEFINEDBY.toString());
+	}
+
+	private int id(String uri) {
+		return graph.id(uri);
+	}
+
+	/**
+	 * Transforms all classes and datatypes of the given namespaces and
+	 * completes the transformation with {@link #finish()}. The classes are
+	 * processed in the same order as by {@link EcoreGenerator}.
+	 *
+	 * @return the first error that occurred or <code>null</code>
+	 */
+	public Exception transform(Collection<String> namespaces) {
+		Map<String, TreeSet<String>> classes = new TreeMap<String, TreeSet<String>>();
+		for (String namespace : namespaces) {
+			classes.put(namespace, new TreeSet<String>());
+		}
+		for (int typeId : new int[] { owlClass, rdfsDatatype }) {
+			for (int bean : graph.subjects(type, typeId)) {
+				if (graph.isUri(bean)) {
+					TreeSet<String> uris = classes.get(namespace(graph
+							.value(bean)));
+					if (uris != null) {
+						uris.add(graph.value(bean));
+					}
+				}
+			}
+		}
+
+		Exception exception = null;
+		for (TreeSet<String> uris : classes.values()) {
+			for (String uri : uris) {
+				long start = monitor.isEnabled() ? System.nanoTime() : 0;
+				try {
+					owl2ecore(id(uri));
+				} catch (Exception exc) {
+					logger.error("Error processing {}", uri);
+					if (exception == null) {
+						exception = exc;
+					}
+				}
+				if (monitor.isEnabled()) {
+					monitor.classTransformed(uri, System.nanoTime() - start);
+				}
+			}
+		}
+		finish();
+		return exception;
+	}
+
+	private void owl2ecore(int bean) throws OWLTransformerException {
+		// don't map RDFS or OWL built-in types
+		if (isBuiltIn(bean)) {
+			return;
+		}
+
+		EClassifier eClass = owl2eclassifier(bean);
+		if (eClass == null) {
+			return;
+		}
+
+		if (hasType(bean, owlClass) || hasType(bean, rdfsClass)) {
+			// RDFSSubClassOf -> EClass.eSuperType
+			for (int superClass : sorted(graph.objects(bean, subClassOf),
+					valueOrder)) {
+				if (!graph.isUri(superClass) || isBuiltIn(superClass)
+						|| superClass == bean) {
+					continue;
+				}
+				EClassifier eSuperClass = owl2eclassifier(superClass);
+
+				// super types are wired after all classes are known
+				if (eClass instanceof EClass && eSuperClass instanceof EClass) {
+					addSuperClass((EClass) eClass, (EClass) eSuperClass);
+				}
+			}
+
+			// property -> EReference, Attribute
+			for (int property : sorted(graph.subjects(domain, bean),
+					resourceOrder)) {
+				EStructuralFeature eProperty = prop2EStructuralFeature(property);
+				if (isObjectProperty(property)) {
+					for (int inverseProperty : sorted(graph.objects(property,
+							inverseOf), valueOrder)) {
+						if (graph.objects(inverseProperty, domain).length > 0) {
+							EReference eInverseProperty = (EReference) prop2EStructuralFeature(inverseProperty);
+							eInverseProperty
+									.setEOpposite((EReference) eProperty);
+							((EReference) eProperty)
+									.setEOpposite(eInverseProperty);
+						}
+					}
+				}
+
+				// set domain, features are attached by finish()
+				addFeature((EClass) eClass, eProperty);
+			}
+		}
+	}
+
+	private EStructuralFeature prop2EStructuralFeature(int p)
+			throws OWLTransformerException {
+		EStructuralFeature ep = (EStructuralFeature) elements.get(p);
+		if (ep == null) {
+			EClassifier eRange = null;
+			int[] ranges = graph.objects(p, range);
+			if (ranges.length > 0) {
+				// if property without range, leave it as null
+				int rangeClass = sorted(ranges, valueOrder)[0];
+				eRange = (EClassifier) elements.get(rangeClass);
+
+				if (graph.isUri(rangeClass)) {
+					eRange = owl2eclassifier(rangeClass);
+				}
+			}
+
+			if (isObjectProperty(p) && !(eRange instanceof EEnum)) {
+				ep = EcoreFactory.eINSTANCE.createEReference();
+				ep.setUpperBound(-1);
+
+				// property attribute to annotation
+				if (hasType(p, transitiveProperty)) {
+					addAnnotation(ep, OWL.TYPE_TRANSITIVEPROPERTY);
+				}
+
+				if (hasType(p, symmetricProperty)) {
+					addAnnotation(ep, OWL.TYPE_SYMMETRICPROPERTY);
+				}
+
+				if (hasType(p, inverseFunctionalProperty)) {
+					addAnnotation(ep, OWL.TYPE_INVERSEFUNCTIONALPROPERTY);
+				}
+			} else {
+				// Datatype Property
+				ep = EcoreFactory.eINSTANCE.createEAttribute();
+			}
+
+			ep.setName(getName(p));
+			ep.getEAnnotations().addAll(createEAnnotations(p));
+			ep.setEType(eRange);
+
+			// subPropertyOf will be in eannoations
+			for (int superProperty : sorted(graph.objects(p, subPropertyOf),
+					valueOrder)) {
+				addAnnotation(ep, RDFS.PROPERTY_SUBPROPERTYOF,
+						getName(superProperty));
+			}
+			// property attribute to annotation
+			if (hasType(p, functionalProperty)) {
+				addAnnotation(ep, OWL.TYPE_FUNCTIONALPROPERTY);
+			}
+
+			elements.put(p, ep);
+		}
+
+		return ep;
+	}
+
+	private EClassifier owl2eclassifier(int oclass)
+			throws OWLTransformerException {
+		EClassifier eclass = (EClassifier) elements.get(oclass);
+
+		if (eclass == null) {
+			boolean createdType = true;
+
+			boolean isClass = hasType(oclass, owlClass)
+					|| hasType(oclass, rdfsClass);
+			if (hasType(oclass, dataRange)
+					|| (isClass && oneOfList(oclass).length > 0)) {
+				// enumerate, datarange -> eenum
+				eclass = oneof2EEnum(oclass);
+			} else if (hasType(oclass, rdfsDatatype)) {
+				if (graph.isUri(oclass)) {
+					createdType = false;
+
+					eclass = DATATYPES.get(graph.value(oclass));
+					if (eclass == null) {
+						// Create a user-defined EDatatType
+						eclass = EcoreFactory.eINSTANCE.createEDataType();
+						eclass.setName(getName(oclass));
+						eclass.getEAnnotations().addAll(
+								createEAnnotations(oclass));
+
+						createdType = true;
+					}
+				}
+			} else {
+				// Class
+				eclass = EcoreFactory.eINSTANCE.createEClass();
+
+				// create name for eclass
+				eclass.setName(getName(oclass));
+				eclass.getEAnnotations().addAll(createEAnnotations(oclass));
+			}
+
+			if (eclass != null) {
+				elements.put(oclass, eclass);
+
+				if (createdType) {
+					ensurePackage(namespace(graph.value(oclass)))
+							.getEClassifiers().add(eclass);
+				}
+			}
+		}
+
+		return eclass;
+	}
+
+	private List<EAnnotation> createEAnnotations(int rs) {
+		List<EAnnotation> annotations = new ArrayList<EAnnotation>();
+
+		// create comments as annotations
+		for (int value : sorted(graph.objects(rs, comment), valueOrder)) {
+			annotations.add(createAnnotation(RDFS.PROPERTY_COMMENT, graph
+					.value(value)));
+		}
+
+		// create isDefinedBy as annotations
+		for (int definedBy : sorted(graph.objects(rs, isDefinedBy),
+				valueOrder)) {
+			if (graph.kind(definedBy) != CompactGraph.LITERAL) {
+				annotations.add(createAnnotation(RDFS.PROPERTY_ISDEFINEDBY,
+						uriOrNull(definedBy)));
+			}
+		}
+
+		// create Label as annotations
+		for (int value : sorted(graph.objects(rs, label), valueOrder)) {
+			annotations.add(createAnnotation(RDFS.PROPERTY_LABEL, graph
+					.value(value)));
+		}
+
+		if (hasType(rs, owlClass)) {
+			// record disjointWith
+			for (int disjointClass : sorted(graph.objects(rs, disjointWith),
+					valueOrder)) {
+				annotations.add(createAnnotation(OWL.PROPERTY_DISJOINTWITH,
+						uriOrNull(disjointClass)));
+			}
+		}
+
+		return merge(annotations);
+	}
+
+	private EEnum oneof2EEnum(int enumclass) throws OWLTransformerException {
+		EEnum eenum = (EEnum) elements.get(enumclass);
+
+		if (eenum == null) {
+			int[] memberList = oneOfList(enumclass);
+
+			if (memberList.length > 0) {
+				eenum = EcoreFactory.eINSTANCE.createEEnum();
+				eenum.setName(getName(enumclass));
+				eenum.getEAnnotations().addAll(createEAnnotations(enumclass));
+
+				// create enumliterals from enumclass members
+				List<EEnumLiteral> eliterals = new ArrayList<EEnumLiteral>(
+						memberList.length);
+				int intValue = 0;
+				for (int member : memberList) {
+					// create EEnumLiteral
+					EEnumLiteral eliteral = EcoreFactory.eINSTANCE
+							.createEEnumLiteral();
+					if (graph.kind(member) != CompactGraph.LITERAL) {
+						eliteral.getEAnnotations().addAll(
+								createEAnnotations(member));
+						eliteral.setName(getName(member));
+					} else {
+						eliteral.setName(literalName(member));
+					}
+					eliteral.setValue(intValue);
+					eliterals.add(eliteral);
+					intValue++;
+				}
+				// literals are new objects, no need to check for duplicates
+				((InternalEList<EEnumLiteral>) eenum.getELiterals())
+						.addAllUnique(eliterals);
+			}
+		}
+
+		return eenum;
+	}
+
+	private int[] oneOfList(int oclass) {
+		int[] heads = graph.objects(oclass, oneOf);
+		return heads.length > 0 ? graph.list(heads[0], first, rest, nil)
+				: heads;
+	}
+
+	private boolean hasType(int resource, int typeId) {
+		return graph.contains(resource, type, typeId);
+	}
+
+	/**
+	 * Returns <code>true</code> if the property is an object property. Like
+	 * the entity interfaces, the transitive, symmetric and inverse functional
+	 * properties are also object properties.
+	 */
+	private boolean isObjectProperty(int property) {
+		return hasType(property, objectProperty)
+				|| hasType(property, transitiveProperty)
+				|| hasType(property, symmetricProperty)
+				|| hasType(property, inverseFunctionalProperty);
+	}
+
+	/**
+	 * Returns the name of an enumeration literal that is given as RDF literal.
+	 * Literals with a numeric or boolean datatype are named by their Java
+	 * value like in {@link OWL2EcoreTransformer}, e.g. <code>1</code> for
+	 * <code>"01"^^xsd:int</code>.
+	 */
+	private String literalName(int literal) {
+		String label = graph.value(literal);
+		String datatype = graph.datatype(literal);
+		if (datatype == null || !datatype.startsWith(XSD_NAMESPACE)) {
+			return label;
+		}
+		String localName = datatype.substring(XSD_NAMESPACE.length());
+		try {
+			if ("int".equals(localName)) {
+				return String.valueOf(Integer.valueOf(label.trim()));
+			} else if ("integer".equals(localName)) {
+				return String.valueOf(new BigInteger(label.trim()));
+			} else if ("long".equals(localName)) {
+				return String.valueOf(Long.valueOf(label.trim()));
+			} else if ("short".equals(localName)) {
+				return String.valueOf(Short.valueOf(label.trim()));
+			} else if ("byte".equals(localName)) {
+				return String.valueOf(Byte.valueOf(label.trim()));
+			} else if ("decimal".equals(localName)) {
+				return String.valueOf(new BigDecimal(label.trim()));
+			} else if ("double".equals(localName)) {
+				return String.valueOf(Double.valueOf(label.trim()));
+			} else if ("float".equals(localName)) {
+				return String.valueOf(Float.valueOf(label.trim()));
+			} else if ("boolean".equals(localName)) {
+				return String.valueOf(Boolean.valueOf(label.trim()));
+			}
+		} catch (NumberFormatException e) {
+			// invalid literals are named by their label
+		}
+		return label;
+	}
+
+	private boolean isBuiltIn(int resource) {
+		String namespace = namespace(graph.value(resource));
+		return OWL.NAMESPACE.toString().equals(namespace)
+				|| RDFS.NAMESPACE.toString().equals(namespace);
+	}
+
+	private String uriOrNull(int resource) {
+		return graph.isUri(resource) ? graph.value(resource) : null;
+	}
+
+	private String getName(int resource) throws OWLTransformerException {
+		if (!graph.isUri(resource)) {
+			throw new OWLTransformerException(
+					"Unable to name anonymous resource _:"
+							+ graph.value(resource));
+		}
+		String uri = graph.value(resource);
+		return uri.substring(namespace(uri).length());
+	}
+
+	/**
+	 * Returns the namespace of a URI which ends with the last
+	 * <code>#</code>, <code>/</code> or <code>:</code>.
+	 */
+	static String namespace(String uri) {
+		int index = uri.lastIndexOf('#');
+		if (index < 0) {
+			index = uri.lastIndexOf('/');
+		}
+		if (index < 0) {
+			index = uri.lastIndexOf(':');
+		}
+		return uri.substring(0, index + 1);
+	}
+
+	private static int[] sorted(int[] ids, Comparator<Integer> order) {
+		if (ids.length < 2) {
+			return ids;
+		}
+		Integer[] boxed = new Integer[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			boxed[i] = ids[i];
+		}
+		// stable sort, equal keys keep their order
+		Arrays.sort(boxed, order);
+		int[] result = new int[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			result[i] = boxed[i];
+		}
+		return result;
+	}
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+/**
+ * Streaming (de-)compression of files based on their file name extension.
+ * Supported extensions are <code>.gz</code>, <code>.bz2</code> and
+ * <code>.zip</code>. BZip2 requires the optional Apache Commons Compress
+ * library, its classes are only referenced by {@link BZip2} that is loaded
+ * for <code>.bz2</code> files.
+ */
+class Compression {
+	static final String GZIP = ".gz";
+
+	static final String BZIP2 = ".bz2";
+
+	static final String ZIP = ".zip";
+
+	/**
+	 * Modification time of zip entries, 1980-01-01 00:00 local time which is
+	 * the earliest time that can be represented by a zip archive
+	 */
+	private static final long ZIP_ENTRY_TIME = new GregorianCalendar(1980,
+			Calendar.JANUARY, 1).getTimeInMillis();
+
+	private Compression() {
+	}
+
+	/**
+	 * Creates the BZip2 streams. This class is only loaded and linked if a
+	 * <code>.bz2</code> file is processed, so that all other formats work
+	 * without Apache Commons Compress.
+	 */
+	private static class BZip2 {
+		static InputStream decompress(InputStream in) throws IOException {
+			return new BZip2CompressorInputStream(in);
+		}
+
+		static OutputStream compress(OutputStream out) throws IOException {
+			return new BZip2CompressorOutputStream(out);
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the file name has an extension of a
+	 * supported compression format.
+	 */
+	static boolean isCompressed(String filename) {
+		return filename.endsWith(GZIP) || filename.endsWith(BZIP2)
+				|| isZip(filename);
+	}
+
+	/**
+	 * Returns <code>true</code> if the file name denotes a zip archive that
+	 * may contain multiple entries.
+	 */
+	static boolean isZip(String filename) {
+		return filename.endsWith(ZIP);
+	}
+
+	/**
+	 * Removes the extension of the compression format from the file name.
+	 *
+	 * @return the name of the compressed content, e.g. <code>a.owl</code> for
+	 *         <code>a.owl.gz</code>
+	 */
+	static String stripExtension(String filename) {
+		if (isCompressed(filename)) {
+			return filename.substring(0, filename.lastIndexOf('.'));
+		}
+		return filename;
+	}
+
+	/**
+	 * Wraps the stream with a decompressing stream for <code>.gz</code> and
+	 * <code>.bz2</code> files. Zip archives have to be read entry by entry.
+	 */
+	static InputStream decompress(String filename, InputStream in)
+			throws IOException {
+		if (filename.endsWith(GZIP)) {
+			return new GZIPInputStream(in, 65536);
+		} else if (filename.endsWith(BZIP2)) {
+			try {
+				return BZip2.decompress(in);
+			} catch (NoClassDefFoundError e) {
+				throw new IllegalArgumentException(
+						"BZip2 requires Apache Commons Compress: " + filename);
+			}
+		}
+		return in;
+	}
+
+	/**
+	 * Wraps the stream with a compressing stream according to the extension
+	 * of the file name. Zip archives contain exactly one entry that is named
+	 * like the file without the <code>.zip</code> extension.
+	 */
+	static OutputStream compress(String filename, OutputStream out)
+			throws IOException {
+		if (filename.endsWith(GZIP)) {
+			return new GZIPOutputStream(out, 65536);
+		} else if (filename.endsWith(BZIP2)) {
+			try {
+				return BZip2.compress(out);
+			} catch (NoClassDefFoundError e) {
+				throw new IllegalArgumentException(
+						"BZip2 requires Apache Commons Compress: " + filename);
+			}
+		} else if (isZip(filename)) {
+			String name = stripExtension(filename);
+			name = name.substring(name.lastIndexOf('/') + 1);
+			ZipOutputStream zipOut = new ZipOutputStream(out);
+			ZipEntry entry = new ZipEntry(name);
+			// a fixed time keeps archives of the same content identical
+			entry.setTime(ZIP_ENTRY_TIME);
+			zipOut.putNextEntry(entry);
+			return zipOut;
+		}
+		return out;
+	}
+
+	/**
+	 * Returns a stream that ignores calls to {@link InputStream#close()}.
+	 * This is used to prevent parsers from closing a zip archive after its
+	 * first entry.
+	 */
+	static InputStream uncloseable(InputStream in) {
+		return new FilterInputStream(in) {
+			@Override
+			public void close() {
+			}
+		};
+	}
+}
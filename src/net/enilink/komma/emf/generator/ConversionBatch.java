@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs many conversions within one JVM. The conversions are listed in a
+ * manifest file with the command line arguments of one standalone run per
+ * line. Empty lines and lines starting with <code>#</code> are ignored,
+ * arguments containing spaces can be enclosed in double quotes.
+ * <p>
+ * The jar ontologies are loaded only once into a {@link SharedBase} for all
+ * jobs with the same jars and the jobs are run in parallel. Each job writes
+ * the same output as a standalone run with the same arguments.
+ */
+class ConversionBatch {
+	private static class Job {
+		final int number;
+
+		final CommandLine line;
+
+		final OntologyConverter converter;
+
+		Job(int number, CommandLine line, OntologyConverter converter) {
+			this.number = number;
+			this.line = line;
+			this.converter = converter;
+		}
+
+		@Override
+		public String toString() {
+			return "job " + number + " (" + OntologyConverter.getOutput(line)
+					+ ")";
+		}
+	}
+
+	final Logger logger = LoggerFactory.getLogger(ConversionBatch.class);
+
+	private final List<Job> jobs;
+
+	private ConversionBatch(List<Job> jobs) {
+		this.jobs = jobs;
+	}
+
+	/**
+	 * Reads and validates all jobs of the given manifest.
+	 *
+	 * @throws ParseException
+	 *             if the arguments of a job are invalid or multiple jobs
+	 *             write the same output
+	 */
+	static ConversionBatch read(File manifest) throws IOException,
+			ParseException {
+		List<Job> jobs = new ArrayList<Job>();
+		Set<File> outputs = new HashSet<File>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(manifest), "UTF-8"));
+		try {
+			String text;
+			int lineNumber = 0;
+			while ((text = reader.readLine()) != null) {
+				lineNumber++;
+				text = text.trim();
+				if (text.length() == 0 || text.startsWith("#")) {
+					continue;
+				}
+				try {
+					CommandLine line = OntologyConverter
+							.parseArguments(tokenize(text));
+					if (line.hasOption('j') || line.hasOption('h')) {
+						throw new ParseException(
+								"Nested jobs or help are not allowed");
+					}
+					OntologyConverter converter = OntologyConverter
+							.createConverter(line);
+					for (File output : converter.getOutputs(line)) {
+						if (!outputs.add(output.getCanonicalFile())) {
+							throw new ParseException("Output is already "
+									+ "written by another job: " + output);
+						}
+					}
+					jobs.add(new Job(jobs.size() + 1, line, converter));
+				} catch (ParseException e) {
+					throw new ParseException(manifest + ":" + lineNumber
+							+ ": " + e.getMessage());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return new ConversionBatch(jobs);
+	}
+
+	static String[] tokenize(String text) throws ParseException {
+		List<String> tokens = new ArrayList<String>();
+		StringBuilder token = null;
+		boolean quoted = false;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+				if (token == null) {
+					token = new StringBuilder();
+				}
+			} else if (Character.isWhitespace(c) && !quoted) {
+				if (token != null) {
+					tokens.add(token.toString());
+					token = null;
+				}
+			} else {
+				if (token == null) {
+					token = new StringBuilder();
+				}
+				token.append(c);
+			}
+		}
+		if (quoted) {
+			throw new ParseException("Unterminated quote");
+		}
+		if (token != null) {
+			tokens.add(token.toString());
+		}
+		return tokens.toArray(new String[tokens.size()]);
+	}
+
+	/**
+	 * Runs all jobs and logs the time of each job.
+	 *
+	 * @param threads
+	 *            the number of jobs that are run in parallel
+	 * @return <code>true</code> if all jobs succeeded
+	 */
+	boolean run(int threads) throws Exception {
+		long start = System.nanoTime();
+		// jobs with the same jars share the imported ontologies
+		Map<List<String>, SharedBase> bases = new LinkedHashMap<List<String>, SharedBase>();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+				Math.min(threads, jobs.size())));
+		try {
+			for (Job job : jobs) {
+				List<String> key = new ArrayList<String>();
+				for (URL jar : job.converter.getJars()) {
+					key.add(jar.toExternalForm());
+				}
+				SharedBase base = bases.get(key);
+				if (base == null) {
+					long baseStart = System.nanoTime();
+					OntologyConverter baseConverter = new OntologyConverter();
+					for (URL jar : job.converter.getJars()) {
+						baseConverter.addJar(jar);
+					}
+					base = baseConverter.createSharedBase();
+					bases.put(key, base);
+					logger.info("{} ms for shared base with {} jar(s)",
+							millis(baseStart), key.size());
+				}
+				job.converter.setSharedBase(base);
+			}
+
+			List<Future<Long>> results = new ArrayList<Future<Long>>();
+			for (final Job job : jobs) {
+				results.add(executor.submit(new Callable<Long>() {
+					public Long call() throws Exception {
+						long jobStart = System.nanoTime();
+						try {
+							job.converter.init();
+							job.converter.convert(job.line);
+						} finally {
+							job.converter.shutDown();
+						}
+						return millis(jobStart);
+					}
+				}));
+			}
+
+			int failed = 0;
+			for (int i = 0; i < jobs.size(); i++) {
+				try {
+					logger.info("{} ms for {}", results.get(i).get(), jobs
+							.get(i));
+				} catch (ExecutionException e) {
+					failed++;
+					logger.error("Failed " + jobs.get(i), e.getCause());
+				}
+			}
+			logger.info("{} ms for {} job(s), {} failed", new Object[] {
+					millis(start), jobs.size(), failed });
+			return failed == 0;
+		} finally {
+			executor.shutdownNow();
+			for (SharedBase base : bases.values()) {
+				base.shutDown();
+			}
+		}
+	}
+
+	private static long millis(long start) {
+		return (System.nanoTime() - start) / 1000000;
+	}
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.File;
+import java.net.URL;
+
+import org.eclipse.emf.ecore.EClassifier;
+
+/**
+ * Receives events about the phases of a conversion and the time that was
+ * spent for single elements. All methods do nothing by default, subclasses
+ * only override the events they are interested in.
+ * <p>
+ * Durations are only measured if {@link #isEnabled()} returns
+ * <code>true</code>, so the default monitor {@link #NONE} has no overhead.
+ * All methods may be called concurrently if a monitor is shared by
+ * concurrent conversions.
+ */
+public abstract class ConversionMonitor {
+	/** A monitor that ignores all events */
+	public static final ConversionMonitor NONE = new ConversionMonitor() {
+		@Override
+		public boolean isEnabled() {
+			return false;
+		}
+	};
+
+	/**
+	 * Returns <code>true</code> if events should be measured and reported to
+	 * this monitor.
+	 */
+	public boolean isEnabled() {
+		return true;
+	}
+
+	/**
+	 * An RDF source was loaded into the repository.
+	 *
+	 * @param url
+	 *            the source
+	 * @param triples
+	 *            the number of triples in the source's context
+	 * @param bytes
+	 *            the number of (compressed) bytes that were read
+	 * @param nanos
+	 *            the duration in nanoseconds
+	 */
+	public void sourceLoaded(URL url, long triples, long bytes, long nanos) {
+	}
+
+	/**
+	 * The repository was normalized or a normalized copy was read from the
+	 * cache.
+	 *
+	 * @param cached
+	 *            <code>true</code> if the normalized repository was cached
+	 * @param nanos
+	 *            the duration in nanoseconds
+	 */
+	public void normalized(boolean cached, long nanos) {
+	}
+
+	/**
+	 * An OWL class or datatype was transformed into an ECore classifier.
+	 *
+	 * @param uri
+	 *            the URI of the class
+	 * @param nanos
+	 *            the duration in nanoseconds
+	 */
+	public void classTransformed(String uri, long nanos) {
+	}
+
+	/**
+	 * An ECore classifier was transformed into an OWL class.
+	 *
+	 * @param eClassifier
+	 *            the classifier
+	 * @param nanos
+	 *            the duration in nanoseconds
+	 */
+	public void classifierTransformed(EClassifier eClassifier, long nanos) {
+	}
+
+	/**
+	 * An output file was saved.
+	 *
+	 * @param file
+	 *            the file
+	 * @param changed
+	 *            <code>false</code> if the file already had the same content
+	 * @param nanos
+	 *            the duration in nanoseconds
+	 */
+	public void fileSaved(File file, boolean changed, long nanos) {
+	}
+}
@@ -13,10 +13,17 @@ package net.enilink.komma.emf.generator;
 import java.io.File;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.emf.common.util.EMap;
 import org.eclipse.emf.ecore.EAnnotation;
@@ -35,7 +42,12 @@ import org.eclipse.emf.ecore.EcorePackage;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.ResourceSet;
 import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.xmi.XMLResource;
 import org.eclipse.emf.ecore.xmi.impl.XMIResourceFactoryImpl;
+import org.eclipse.emf.ecore.xmi.impl.XMLParserPoolImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import net.enilink.vocab.owl.Class;
 import net.enilink.vocab.owl.DatatypeProperty;
@@ -58,35 +70,131 @@ import net.enilink.komma.core.URI;
 import net.enilink.komma.core.URIImpl;
 
 public class Ecore2OWLTransformer {
+	final Logger logger = LoggerFactory.getLogger(Ecore2OWLTransformer.class);
+
 	IKommaManager manager;
 
+	ResourceSet resourceSet;
+
+	ConversionMonitor monitor = ConversionMonitor.NONE;
+
+	/** final property URIs of the planned attributes and references */
+	Map<EStructuralFeature, URI> propertyNames = new HashMap<EStructuralFeature, URI>();
+
+	/** classifiers whose property names are already planned */
+	Set<EClassifier> plannedClassifiers = new HashSet<EClassifier>();
+
+	/** OWL resources of the already transformed classifiers */
+	Map<EClassifier, IResource> classifiers = new HashMap<EClassifier, IResource>();
+
+	/** (URI, concept) -&gt; entity that was already found or created */
+	Map<List<Object>, Object> entities = new HashMap<List<Object>, Object>();
+
+	/** map classes whose restrictions were already created */
+	Map<URI, Class> mapClasses = new HashMap<URI, Class>();
+
 	public Ecore2OWLTransformer(IKommaManager manager) {
+		this(manager, createResourceSet());
+	}
+
+	/**
+	 * Creates a transformer that loads ECore files into the given resource
+	 * set. The resource set's registries are used instead of the global EMF
+	 * registries, which allows to run independent transformations
+	 * concurrently.
+	 * 
+	 * @param manager
+	 *            the manager for the created OWL resources
+	 * @param resourceSet
+	 *            the resource set used to load ECore files
+	 * @see #createResourceSet()
+	 */
+	public Ecore2OWLTransformer(IKommaManager manager, ResourceSet resourceSet) {
 		this.manager = manager;
+		this.resourceSet = resourceSet;
 	}
 
-	public void ecore2OWL(String ecoreFilePath, Map<String, String> options)
-			throws OWLTransformerException {
-		// register default resource factory
-		Resource.Factory.Registry.INSTANCE.getExtensionToFactoryMap().put(
-				Resource.Factory.Registry.DEFAULT_EXTENSION,
-				new XMIResourceFactoryImpl());
+	/**
+	 * Sets the monitor that is notified about each transformed classifier.
+	 * 
+	 * @param monitor
+	 *            the monitor, must not be <code>null</code>
+	 */
+	public void setMonitor(ConversionMonitor monitor) {
+		this.monitor = monitor;
+	}
 
-		// create resource set to hold the resource we're loading and its
-		// dependent resources
-		ResourceSet resourceSet = new ResourceSetImpl();
+	/**
+	 * Creates a resource set that is tuned for loading many interlinked ECore
+	 * files. It pools XML parsers, defers the resolution of IDREFs, caches
+	 * the lookup tables for XML names and resolves resources by URI in
+	 * constant time.
+	 * 
+	 * @return a new resource set
+	 */
+	public static ResourceSet createResourceSet() {
+		ResourceSetImpl resourceSet = new ResourceSetImpl();
+		resourceSet
+				.setURIResourceMap(new HashMap<org.eclipse.emf.common.util.URI, Resource>());
+		resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap()
+				.put(Resource.Factory.Registry.DEFAULT_EXTENSION,
+						new XMIResourceFactoryImpl());
+
+		Map<Object, Object> loadOptions = resourceSet.getLoadOptions();
+		loadOptions.put(XMLResource.OPTION_USE_PARSER_POOL,
+				new XMLParserPoolImpl());
+		loadOptions.put(XMLResource.OPTION_DEFER_IDREF_RESOLUTION,
+				Boolean.TRUE);
+		loadOptions.put(XMLResource.OPTION_USE_XML_NAME_TO_FEATURE_MAP,
+				new HashMap<Object, Object>());
+		loadOptions.put(XMLResource.OPTION_USE_DEPRECATED_METHODS,
+				Boolean.FALSE);
+		return resourceSet;
+	}
 
-		// load file
-		resourceSet.getResource(
-				org.eclipse.emf.common.util.URI.createFileURI(ecoreFilePath),
-				true);
-		File inputFile = new File(ecoreFilePath);
-		org.eclipse.emf.common.util.URI absoluteInputURI = org.eclipse.emf.common.util.URI
-				.createFileURI(inputFile.getAbsolutePath());
+	/**
+	 * Loads the given ECore files into this transformer's resource set and
+	 * resolves all cross-document references in one pass afterwards. Each
+	 * file is loaded at most once, also if it is referenced by other files.
+	 * Only the resources that are loaded by this call are resolved, hence
+	 * files can also be loaded one by one.
+	 * 
+	 * @param ecoreFilePaths
+	 *            the ECore files
+	 * @return the loaded resources in the order of the given files
+	 */
+	public List<Resource> load(Collection<String> ecoreFilePaths) {
+		List<Resource> allResources = resourceSet.getResources();
+		int first = allResources.size();
+		List<Resource> resources = new ArrayList<Resource>();
+		for (String ecoreFilePath : ecoreFilePaths) {
+			resources.add(resourceSet.getResource(
+					org.eclipse.emf.common.util.URI.createFileURI(new File(
+							ecoreFilePath).getAbsolutePath()), true));
+		}
 
-		Resource resource = resourceSet.getResource(absoluteInputURI, true);
+		// resolve all proxies of the new resources at once instead of on
+		// demand, resources that are loaded while resolving are appended
+		for (int i = first; i < allResources.size(); i++) {
+			EcoreUtil.resolveAll(allResources.get(i));
+		}
+		Map<EObject, Collection<EStructuralFeature.Setting>> unresolved = EcoreUtil.UnresolvedProxyCrossReferencer
+				.find(new ArrayList<Resource>(allResources.subList(first,
+						allResources.size())));
+		for (Map.Entry<EObject, Collection<EStructuralFeature.Setting>> entry : unresolved
+				.entrySet()) {
+			logger.warn("Unresolved proxy {} referenced by {} elements",
+					EcoreUtil.getURI(entry.getKey()), entry.getValue().size());
+		}
+		return resources;
+	}
 
-		ecore2OWL(resource, options);
+	public void ecore2OWL(String ecoreFilePath, Map<String, String> options)
+			throws OWLTransformerException {
+		// load file and all referenced files
+		Resource resource = load(Collections.singleton(ecoreFilePath)).get(0);
 
+		ecore2OWL(resource, options);
 	}
 
 	public void ecore2OWL(Resource ecoreResource, Map<String, String> options)
@@ -102,101 +210,229 @@ public class Ecore2OWLTransformer {
 
 	public void ecore2OWL(EPackage ePackage, Map<String, String> options)
 			throws OWLTransformerException {
-		String nsUri = ePackage.getNsURI();
+		String nsUri = EcoreSharding.namespace(ePackage);
 		// retrieve all eclassifiers needed to be transformed
 		List<EClassifier> eClassifiers = getEClassifiers(ePackage);
 
+		// resolve name collisions before any property is created, the
+		// classifiers may already be planned together with other packages
+		List<EClassifier> unplanned = new ArrayList<EClassifier>();
+		for (EClassifier eClassifier : eClassifiers) {
+			if (!plannedClassifiers.contains(eClassifier)) {
+				unplanned.add(eClassifier);
+			}
+		}
+		planPropertyNames(unplanned);
+
 		// EClass -> OWLClass
 		for (EClassifier eclassifier : eClassifiers) {
 
 			// FRANK
-			if ("java.util.Map$Entry"
-					.equals(eclassifier.getInstanceClassName())) {
+			if (isMapEntry(eclassifier)) {
 				continue;
 			}
 
-			// transform classifier
-			net.enilink.vocab.rdfs.Resource rclass = eclass2OWL(eclassifier);
+			if (!monitor.isEnabled()) {
+				eclassifier2OWL(eclassifier);
+				continue;
+			}
+			long start = System.nanoTime();
+			try {
+				eclassifier2OWL(eclassifier);
+			} finally {
+				monitor.classifierTransformed(eclassifier, System.nanoTime()
+						- start);
+			}
+		}
+
+		// Import Komma Ontology
+		Ontology ontology = manager.find(URIImpl.createURI(nsUri),
+				Ontology.class);
+
+		Ontology kommaOntology = manager.find(
+				CONCEPTS.NAMESPACE_URI.trimFragment(), Ontology.class);
+		ontology.getOwlImports().add(kommaOntology);
+
+	}
+
+	private static boolean isMapEntry(EClassifier eClassifier) {
+		return "java.util.Map$Entry".equals(eClassifier.getInstanceClassName());
+	}
 
-			if (eclassifier instanceof EClass) {
-				Class oclass = (Class) rclass;
+	/**
+	 * Plans the property names of all packages of the given resources
+	 * together. This resolves name collisions between packages with the same
+	 * namespace before the first package is transformed, instead of only
+	 * within each call of {@link #ecore2OWL(EPackage, Map)}.
+	 * 
+	 * @param resources
+	 *            the resources that are transformed afterwards
+	 */
+	public void planPropertyNames(Collection<Resource> resources) {
+		List<EClassifier> eClassifiers = new ArrayList<EClassifier>();
+		for (Resource resource : resources) {
+			if (!resource.getContents().isEmpty()
+					&& resource.getContents().get(0) instanceof EPackage) {
+				eClassifiers.addAll(getEClassifiers((EPackage) resource
+						.getContents().get(0)));
+			}
+		}
+		planPropertyNames(eClassifiers);
+	}
 
-				// eSuperTypes -> RDFSSubClassOf
-				EClass eclass = (EClass) eclassifier;
-				for (EClassifier eSuper : eclass.getESuperTypes()) {
-					if (eSuper.eIsProxy()) {
-						continue;
+	/**
+	 * Assigns the final URIs of the properties of all given classes. If an
+	 * object property and a datatype property share a name, either within
+	 * the classifiers or with an object property of the store, then the
+	 * object property keeps the name and the datatype property gets a
+	 * disjoint name. Each property is therefore created once under its final
+	 * URI.
+	 * <p>
+	 * A datatype property of the store that is not planned together with the
+	 * classifiers is never renamed. If an object property of the classifiers
+	 * uses its name then a warning is logged.
+	 */
+	private void planPropertyNames(List<EClassifier> eClassifiers) {
+		plannedClassifiers.addAll(eClassifiers);
+		Set<URI> objectProperties = new LinkedHashSet<URI>();
+		// name -> attributes that are mapped to datatype properties
+		Map<URI, List<EAttribute>> datatypeProperties = new LinkedHashMap<URI, List<EAttribute>>();
+		for (EClassifier eClassifier : eClassifiers) {
+			if (!(eClassifier instanceof EClass) || isMapEntry(eClassifier)) {
+				continue;
+			}
+			EClass eClass = (EClass) eClassifier;
+			for (EAttribute eAttribute : eClass.getEAttributes()) {
+				if (eAttribute.eIsProxy()) {
+					continue;
+				}
+				URI name = getURI(eAttribute);
+				propertyNames.put(eAttribute, name);
+				if (isDatatypeProperty(eAttribute)) {
+					List<EAttribute> attributes = datatypeProperties.get(name);
+					if (attributes == null) {
+						attributes = new ArrayList<EAttribute>();
+						datatypeProperties.put(name, attributes);
 					}
-					Class superClass = (Class) eclass2OWL(eSuper);
-					oclass.getRdfsSubClassOf().add(superClass);
+					attributes.add(eAttribute);
+				} else {
+					objectProperties.add(name);
 				}
+			}
+			for (EReference eReference : eClass.getEReferences()) {
+				URI name = getURI(eReference);
+				propertyNames.put(eReference, name);
+				objectProperties.add(name);
+			}
+		}
 
-				// EAttribute -> OWLDatatypeProperty
-				for (EAttribute eAttribute : eclass.getEAttributes()) {
-					if (eAttribute.eIsProxy()) {
-						continue;
-					}
+		for (Map.Entry<URI, List<EAttribute>> entry : datatypeProperties
+				.entrySet()) {
+			URI name = entry.getKey();
+			if (objectProperties.contains(name)
+					|| manager.find(name) instanceof ObjectProperty) {
+				URI disjointName = disjointPropertyName(name);
+				for (EAttribute eAttribute : entry.getValue()) {
+					propertyNames.put(eAttribute, disjointName);
+				}
+			}
+		}
+
+		for (URI name : objectProperties) {
+			Object property = manager.find(name);
+			if (property instanceof DatatypeProperty
+					&& !(property instanceof ObjectProperty)) {
+				logger.warn("Object property {} was already created as "
+						+ "datatype property", name);
+			}
+		}
+	}
+
+	/**
+	 * Returns the planned URI of the property for the given feature.
+	 */
+	private URI propertyName(EStructuralFeature eFeature) {
+		URI name = propertyNames.get(eFeature);
+		return name != null ? name : getURI(eFeature);
+	}
+
+	private void eclassifier2OWL(EClassifier eclassifier)
+			throws OWLTransformerException {
+		// transform classifier
+		net.enilink.vocab.rdfs.Resource rclass = eclass2OWL(eclassifier);
 
-					OwlProperty property = eAttribute2Property(eAttribute,
-							oclass);
+		if (eclassifier instanceof EClass) {
+			Class oclass = (Class) rclass;
+
+			// eSuperTypes -> RDFSSubClassOf
+			EClass eclass = (EClass) eclassifier;
+			for (EClassifier eSuper : eclass.getESuperTypes()) {
+				if (eSuper.eIsProxy()) {
+					continue;
+				}
+				Class superClass = (Class) eclass2OWL(eSuper);
+				oclass.getRdfsSubClassOf().add(superClass);
+			}
+
+			// EAttribute -> OWLDatatypeProperty
+			for (EAttribute eAttribute : eclass.getEAttributes()) {
+				if (eAttribute.eIsProxy()) {
+					continue;
 				}
 
-				// EReference -> OWLObjectProperty
-				for (EReference eref : eclass.getEReferences()) {
-					ObjectProperty op = eref2Property(eref, oclass);
-					op.getRdfsDomains().add(oclass);
-
-					/*
-					 * determine multiplicity: 5 situation situation lowBound
-					 * upperBound 0.. 0 -1 m.. m -1 0..n 0 n m..n m n m..m m m
-					 */
-					int lowerBound = eref.getLowerBound();
-					int upperBound = eref.getUpperBound();
-					if (lowerBound > 0) {
-						if (upperBound == -1) {
-							// minCardinality m..* (m, -1)
-							oclass.getRdfsSubClassOf().add(
-									createMinCardinarlity(op, lowerBound));
-						} else if (lowerBound == upperBound) {
-							// Cardinality (m,m)-->m..m
-							oclass.getRdfsSubClassOf().add(
-									createCardinarlity(op, lowerBound));
-						} else {
-							// minCardinality & maxCardinality (m,n)-->m..n
-							oclass.getRdfsSubClassOf().add(
-									createMinCardinarlity(op, lowerBound));
-							oclass.getRdfsSubClassOf().add(
-									createMaxCardinarlity(op, upperBound));
-						}
-					} else if (upperBound != -1) {
-						// maxCardinality (0,n)-->0..n
+				OwlProperty property = eAttribute2Property(eAttribute,
+						oclass);
+			}
+
+			// EReference -> OWLObjectProperty
+			for (EReference eref : eclass.getEReferences()) {
+				ObjectProperty op = eref2Property(eref, oclass);
+				op.getRdfsDomains().add(oclass);
+
+				/*
+				 * determine multiplicity: 5 situation situation lowBound
+				 * upperBound 0.. 0 -1 m.. m -1 0..n 0 n m..n m n m..m m m
+				 */
+				int lowerBound = eref.getLowerBound();
+				int upperBound = eref.getUpperBound();
+				if (lowerBound > 0) {
+					if (upperBound == -1) {
+						// minCardinality m..* (m, -1)
+						oclass.getRdfsSubClassOf().add(
+								createMinCardinarlity(op, lowerBound));
+					} else if (lowerBound == upperBound) {
+						// Cardinality (m,m)-->m..m
+						oclass.getRdfsSubClassOf().add(
+								createCardinarlity(op, lowerBound));
+					} else {
+						// minCardinality & maxCardinality (m,n)-->m..n
+						oclass.getRdfsSubClassOf().add(
+								createMinCardinarlity(op, lowerBound));
 						oclass.getRdfsSubClassOf().add(
 								createMaxCardinarlity(op, upperBound));
 					}
+				} else if (upperBound != -1) {
+					// maxCardinality (0,n)-->0..n
+					oclass.getRdfsSubClassOf().add(
+							createMaxCardinarlity(op, upperBound));
 				}
 			}
 		}
-
-		// Import Komma Ontology
-		Ontology ontology = manager.find(URIImpl.createURI(nsUri),
-				Ontology.class);
-
-		Ontology kommaOntology = manager.find(
-				CONCEPTS.NAMESPACE_URI.trimFragment(), Ontology.class);
-		ontology.getOwlImports().add(kommaOntology);
-
 	}
 
 	private IResource eclass2OWL(EClassifier eClassifier)
 			throws OWLTransformerException {
-		URI uri = getURI(eClassifier);
+		IResource resource = classifiers.get(eClassifier);
+		if (resource != null) {
+			return resource;
+		}
 
-		IResource resource = null;
+		URI uri = getURI(eClassifier);
 		if (!manager.contains(uri)) {
 			if (eClassifier instanceof EClass) {
 				// EClass -> OWLClass
 				EClass eclass = (EClass) eClassifier;
-				Class owlClass = manager.createNamed(uri, Class.class);
+				Class owlClass = createNamed(uri, Class.class);
 
 				resource = (IResource) owlClass;
 
@@ -207,7 +443,7 @@ public class Ecore2OWLTransformer {
 				// EEnum -> OWLOneOf
 				EEnum eenum = (EEnum) eClassifier;
 
-				Class owlClass = manager.createNamed(uri, Class.class);
+				Class owlClass = createNamed(uri, Class.class);
 
 				// TODO correctly transform all KOMMA specific annotations
 				addPropertyValues(((IResource) owlClass),
@@ -233,7 +469,7 @@ public class Ecore2OWLTransformer {
 			} else if (eClassifier instanceof EDataType) {
 				if (eClassifier.getInstanceClassName().equals("java.util.List")) {
 					// TODO
-					Class owlClass = manager.createNamed(uri, Class.class);
+					Class owlClass = createNamed(uri, Class.class);
 					owlClass.getRdfsSubClassOf().add(
 							(net.enilink.vocab.rdfs.Class) manager
 									.find(RDF.TYPE_LIST));
@@ -245,8 +481,7 @@ public class Ecore2OWLTransformer {
 					resource = (IResource) map;
 				} else {
 					// EDataType -> RDFSDatatype
-					Datatype datatype = manager
-							.createNamed(uri, Datatype.class);
+					Datatype datatype = createNamed(uri, Datatype.class);
 					resource = (IResource) datatype;
 				}
 				addPropertyValues(resource, RDFS.PROPERTY_COMMENT,
@@ -254,12 +489,40 @@ public class Ecore2OWLTransformer {
 
 			}
 		} else {
-			resource = manager.find(uri, IResource.class);
+			resource = find(uri, IResource.class);
 		}
 
+		classifiers.put(eClassifier, resource);
 		return resource;
 	}
 
+	/**
+	 * Finds an entity once per conversion.
+	 */
+	private <T> T find(URI uri, java.lang.Class<T> concept) {
+		List<Object> key = Arrays.<Object> asList(uri, concept);
+		Object entity = entities.get(key);
+		if (entity == null) {
+			entity = manager.find(uri, concept);
+			entities.put(key, entity);
+		}
+		return concept.cast(entity);
+	}
+
+	/**
+	 * Creates a named entity once per conversion, later calls return the
+	 * already created entity.
+	 */
+	private <T> T createNamed(URI uri, java.lang.Class<T> concept) {
+		List<Object> key = Arrays.<Object> asList(uri, concept);
+		Object entity = entities.get(key);
+		if (entity == null) {
+			entity = manager.createNamed(uri, concept);
+			entities.put(key, entity);
+		}
+		return concept.cast(entity);
+	}
+
 	private boolean isObjectDatatype(EDataType eType) {
 		if (eType == EcorePackage.eINSTANCE.getEBooleanObject())
 			return true;
@@ -279,22 +542,27 @@ public class Ecore2OWLTransformer {
 			return false;
 	}
 
-	private URI disjointPropertyName(URI originalName,
-			boolean isDatatypeProperty) {
-		IEntity resource = manager.find(originalName);
-		if (isDatatypeProperty && resource instanceof ObjectProperty) {
-			String suffix = "data".equalsIgnoreCase(originalName.localPart()) ? "Value"
-					: "Data";
-			return originalName.namespace().appendFragment(
-					originalName.localPart() + suffix);
-		} else if (!isDatatypeProperty && !(resource instanceof ObjectProperty)) {
-			String suffix = "data".equalsIgnoreCase(originalName.localPart()) ? "Value"
-					: "Data";
-			URI newName = originalName.namespace().appendFragment(
-					originalName.localPart() + suffix);
-			manager.rename(resource, newName);
+	private static URI disjointPropertyName(URI originalName) {
+		String suffix = "data".equalsIgnoreCase(originalName.localPart()) ? "Value"
+				: "Data";
+		return originalName.namespace().appendFragment(
+				originalName.localPart() + suffix);
+	}
+
+	/**
+	 * Returns <code>true</code> if the given attribute is mapped to a
+	 * datatype property, otherwise it is mapped to an object property.
+	 */
+	private boolean isDatatypeProperty(EAttribute eAttribute) {
+		EClassifier eType = eAttribute.getEAttributeType();
+		if (eType.eIsProxy()) {
+			return true;
+		} else if ("java.util.List".equals(eType.getInstanceClassName())
+				|| eType instanceof EEnum) {
+			return false;
 		}
-		return originalName;
+		// unknown user-defined datatypes are mapped to classes
+		return determineXsdDatatype(eType) != null;
 	}
 
 	private OwlProperty eAttribute2Property(EAttribute eAttribute,
@@ -319,11 +587,11 @@ public class Ecore2OWLTransformer {
 			URI typeURI;
 			if (xsdUri != null) {
 				typeURI = xsdUri;
-				datatype = manager.createNamed(typeURI, Datatype.class);
+				datatype = createNamed(typeURI, Datatype.class);
 			} else {
 				// unknown user-defined datatype
 				typeURI = getURI(eType);
-				datatype = manager.createNamed(typeURI, Class.class);
+				datatype = createNamed(typeURI, Class.class);
 
 				createDataTypeProperty = false;
 			}
@@ -334,12 +602,11 @@ public class Ecore2OWLTransformer {
 			createDataTypeProperty = false;
 		}
 
-		URI name = disjointPropertyName(getURI(eAttribute),
-				createDataTypeProperty);
+		URI name = propertyName(eAttribute);
 		if (createDataTypeProperty) {
-			property = manager.createNamed(name, DatatypeProperty.class);
+			property = createNamed(name, DatatypeProperty.class);
 		} else {
-			property = manager.createNamed(name, ObjectProperty.class);
+			property = createNamed(name, ObjectProperty.class);
 		}
 
 		if (datatype != null) {
@@ -423,7 +690,14 @@ public class Ecore2OWLTransformer {
 	}
 
 	private Class eEnum2oneOf(EEnum eEnum) {
-		IEntity resource = manager.find(getURI(eEnum));
+		URI uri = getURI(eEnum);
+		List<Object> key = Arrays.<Object> asList(uri, Class.class);
+		Object cached = entities.get(key);
+		if (cached != null) {
+			return (Class) cached;
+		}
+
+		IEntity resource = manager.find(uri);
 
 		if (!(resource instanceof Class)) {
 			net.enilink.vocab.owl.Class owlClass = manager
@@ -468,20 +742,25 @@ public class Ecore2OWLTransformer {
 			}
 		}
 
+		entities.put(key, resource);
 		return (Class) resource;
 	}
 
 	private ObjectProperty eref2Property(EReference eReference,
 			Class domainClass) throws OWLTransformerException {
-		URI uri = disjointPropertyName(getURI(eReference), false);
-
-		IEntity resource = manager.find(uri);
-		ObjectProperty objectProperty;
-		if (resource == null || !(resource instanceof ObjectProperty)) {
-			// new property
-			objectProperty = manager.createNamed(uri, ObjectProperty.class);
-		} else {
-			objectProperty = (ObjectProperty) resource;
+		URI uri = propertyName(eReference);
+
+		List<Object> key = Arrays.<Object> asList(uri, ObjectProperty.class);
+		ObjectProperty objectProperty = (ObjectProperty) entities.get(key);
+		if (objectProperty == null) {
+			IEntity resource = manager.find(uri);
+			if (!(resource instanceof ObjectProperty)) {
+				// new property
+				objectProperty = manager.createNamed(uri, ObjectProperty.class);
+			} else {
+				objectProperty = (ObjectProperty) resource;
+			}
+			entities.put(key, objectProperty);
 		}
 
 		// range
@@ -521,8 +800,14 @@ public class Ecore2OWLTransformer {
 
 	private Class handleMap(String name, EClassifier eClassifier)
 			throws OWLTransformerException {
-		Class owlClass = manager.createNamed(
-				getURI(name, eClassifier.getEPackage()), Class.class);
+		URI uri = getURI(name, eClassifier.getEPackage());
+		Class owlClass = mapClasses.get(uri);
+		if (owlClass != null) {
+			// the restrictions of this map class were already created
+			return owlClass;
+		}
+		owlClass = createNamed(uri, Class.class);
+		mapClasses.put(uri, owlClass);
 
 		DetermineMapClassResult determineMapClassResult = determineMapClass(eClassifier);
 
@@ -536,7 +821,7 @@ public class Ecore2OWLTransformer {
 
 				Restriction keyDataRestriction = manager
 						.create(Restriction.class);
-				keyDataRestriction.setOwlOnProperty(manager.find(
+				keyDataRestriction.setOwlOnProperty(find(
 						CONCEPTS.PROPERTY_KEYDATA, OwlProperty.class));
 
 				// QName qn = new
@@ -547,7 +832,7 @@ public class Ecore2OWLTransformer {
 				keyDataRestriction
 						.setOwlAllValuesFrom(determineMapClassResult.keyClass);
 
-				restriction.setOwlOnProperty(manager.find(
+				restriction.setOwlOnProperty(find(
 						CONCEPTS.PROPERTY_ENTRY, OwlProperty.class));
 				restriction.setOwlAllValuesFrom(keyDataRestriction);
 
@@ -560,7 +845,7 @@ public class Ecore2OWLTransformer {
 
 				Restriction keyDataRestriction = manager
 						.create(Restriction.class);
-				keyDataRestriction.setOwlOnProperty(manager.find(
+				keyDataRestriction.setOwlOnProperty(find(
 						CONCEPTS.PROPERTY_VALUEDATA, OwlProperty.class));
 
 				// QName qn = new
@@ -571,7 +856,7 @@ public class Ecore2OWLTransformer {
 				keyDataRestriction
 						.setOwlAllValuesFrom(determineMapClassResult.valueClass);
 
-				restriction.setOwlOnProperty(manager.find(
+				restriction.setOwlOnProperty(find(
 						CONCEPTS.PROPERTY_ENTRY, OwlProperty.class));
 				restriction.setOwlAllValuesFrom(keyDataRestriction);
 
@@ -602,10 +887,10 @@ public class Ecore2OWLTransformer {
 				if (key instanceof EAttribute && value instanceof EAttribute) {
 
 					result.clazz = getMapClass("LiteralKeyValueMap");
-					result.keyClass = manager.find(
+					result.keyClass = find(
 							determineXsdDatatype(((EAttribute) (key))
 									.getEAttributeType()), IClass.class);
-					result.valueClass = manager.find(
+					result.valueClass = find(
 							determineXsdDatatype(((EAttribute) (value))
 									.getEAttributeType()), IClass.class);
 				} else if (key instanceof EAttribute
@@ -644,16 +929,16 @@ public class Ecore2OWLTransformer {
 		if (xsdUri == null) {
 			eclass2OWL(classifier);
 			// Vielleicht ist es ein Typ aus der Ontologie
-			result = manager.find(getURI(classifier), IClass.class);
+			result = find(getURI(classifier), IClass.class);
 		} else {
-			result = manager.find(xsdUri, IClass.class);
+			result = find(xsdUri, IClass.class);
 		}
 
 		return result;
 	}
 
 	private Class getMapClass(String mapName) {
-		return manager.find(CONCEPTS.NAMESPACE_URI.appendFragment(mapName),
+		return find(CONCEPTS.NAMESPACE_URI.appendFragment(mapName),
 				Class.class);
 	}
 
@@ -664,7 +949,7 @@ public class Ecore2OWLTransformer {
 		// use EPackage's Namespace
 		while (nsOwner != null) {
 			if (nsOwner instanceof EPackage) {
-				ns = ((EPackage) nsOwner).getNsURI();
+				ns = EcoreSharding.namespace((EPackage) nsOwner);
 				break;
 			} else {
 				nsOwner = nsOwner.eContainer();
@@ -679,7 +964,7 @@ public class Ecore2OWLTransformer {
 
 		String ns = null;
 		if (nsOwner instanceof EPackage) {
-			ns = ((EPackage) nsOwner).getNsURI();
+			ns = EcoreSharding.namespace((EPackage) nsOwner);
 		} else {
 			nsOwner = nsOwner.eContainer();
 		}
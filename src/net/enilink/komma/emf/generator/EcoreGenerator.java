@@ -28,20 +28,56 @@
  */
 package net.enilink.komma.emf.generator;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
+import org.openrdf.model.Namespace;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
 import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.result.Result;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.ntriples.NTriplesParser;
+import org.openrdf.rio.ntriples.NTriplesWriter;
+import org.openrdf.sail.memory.MemoryStore;
+import org.openrdf.store.StoreException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.enilink.vocab.owl.OWL;
+import net.enilink.vocab.rdf.RDF;
 import net.enilink.vocab.rdfs.RDFS;
 import net.enilink.komma.generator.OwlNormalizer;
 import net.enilink.komma.core.IEntity;
 import net.enilink.komma.core.IKommaManager;
-import net.enilink.komma.core.IQuery;
 import net.enilink.komma.core.KommaModule;
+import net.enilink.komma.core.URIImpl;
 import net.enilink.komma.sesame.DecoratingSesameManagerFactory;
 import net.enilink.komma.sesame.ISesameManager;
 
@@ -53,14 +89,20 @@ import net.enilink.komma.sesame.ISesameManager;
  * 
  */
 public class EcoreGenerator {
-	private static final String SELECT_CLASSES = "PREFIX rdfs: <"
-			+ RDFS.NAMESPACE
-			+ "> PREFIX owl: <"
-			+ OWL.NAMESPACE
-			+ "> SELECT DISTINCT ?bean WHERE { { ?bean a owl:Class } UNION {?bean a rdfs:Datatype } }";
+	/** types of the resources that are transformed into classifiers */
+	private static final String[] CLASS_TYPES = { OWL.NAMESPACE + "Class",
+			RDFS.NAMESPACE + "Datatype" };
+
+	/** Default number of classes that are resolved and transformed at once */
+	public static final int DEFAULT_PAGE_SIZE = 1000;
 
 	final Logger logger = LoggerFactory.getLogger(EcoreGenerator.class);
 
+	private Repository repository;
+
+	/** if the repository was created by this generator */
+	private boolean ownsRepository;
+
 	private DecoratingSesameManagerFactory factory;
 
 	/** namespace -&gt; package */
@@ -70,7 +112,20 @@ public class EcoreGenerator {
 
 	private Class<?>[] baseClasses = new Class<?>[0];
 
-	private Exception exception;
+	private boolean scopedNormalization;
+
+	private File normalizationCache;
+
+	private String inputFingerprint;
+
+	private int pageSize = DEFAULT_PAGE_SIZE;
+
+	private boolean compactEngine;
+
+	/** cached normalized statements that are read by the compact engine */
+	private File compactSource;
+
+	private ConversionMonitor monitor = ConversionMonitor.NONE;
 
 	public Class<?>[] getBaseClasses() {
 		return baseClasses;
@@ -92,49 +147,506 @@ public class EcoreGenerator {
 		packages.put(namespace, pkgName);
 	}
 
-	public void setRepository(Repository repository) {
+	public void setRepository(Repository repository) throws StoreException {
+		replaceRepository(repository, false);
+	}
+
+	/**
+	 * The repository that contains the normalized ontology after
+	 * {@link #init()}. This is a new repository if the normalized ontology
+	 * was read from the cache or if the normalization is scoped, the
+	 * repository that was set before remains unchanged in that case.
+	 * Repositories that are created by this generator are shut down when they
+	 * are replaced, the last one has to be shut down by the caller.
+	 */
+	public Repository getRepository() {
+		return repository;
+	}
+
+	private void replaceRepository(Repository repository, boolean owned)
+			throws StoreException {
+		if (ownsRepository && this.repository != repository) {
+			// a repository of a previous initialization is not used anymore
+			this.repository.shutDown();
+		}
+		this.repository = repository;
+		this.ownsRepository = owned;
 		this.factory = new DecoratingSesameManagerFactory(new KommaModule(),
 				repository);
 	}
 
+	/**
+	 * If normalization should be restricted to the contexts that describe
+	 * the bound namespaces and the contexts they (transitively) depend on.
+	 */
+	public boolean isScopedNormalization() {
+		return scopedNormalization;
+	}
+
+	/**
+	 * If normalization should be restricted to the contexts that describe
+	 * the bound namespaces and the contexts they (transitively) depend on.
+	 * 
+	 * @param scopedNormalization
+	 *            <code>true</code> to normalize only the relevant contexts
+	 */
+	public void setScopedNormalization(boolean scopedNormalization) {
+		this.scopedNormalization = scopedNormalization;
+	}
+
+	/**
+	 * Directory where normalized repositories are cached or
+	 * <code>null</code> if caching is disabled.
+	 */
+	public File getNormalizationCache() {
+		return normalizationCache;
+	}
+
+	/**
+	 * Directory where normalized repositories are cached. The cache is only
+	 * used if an input fingerprint is also set.
+	 * 
+	 * @param normalizationCache
+	 *            the cache directory or <code>null</code>
+	 * @see #setInputFingerprint(String)
+	 */
+	public void setNormalizationCache(File normalizationCache) {
+		this.normalizationCache = normalizationCache;
+	}
+
+	/**
+	 * Fingerprint of all inputs that were loaded into the repository.
+	 */
+	public String getInputFingerprint() {
+		return inputFingerprint;
+	}
+
+	/**
+	 * Fingerprint of all inputs that were loaded into the repository. Two
+	 * repositories with equal fingerprints are expected to have equal
+	 * contents.
+	 * 
+	 * @param inputFingerprint
+	 *            the fingerprint or <code>null</code> if unknown
+	 */
+	public void setInputFingerprint(String inputFingerprint) {
+		this.inputFingerprint = inputFingerprint;
+	}
+
+	/**
+	 * Number of classes that are resolved as entities and transformed at
+	 * once.
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * Number of classes that are resolved as entities and transformed at
+	 * once.
+	 * 
+	 * @param pageSize
+	 *            the page size, must be positive
+	 */
+	public void setPageSize(int pageSize) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("Invalid page size: "
+					+ pageSize);
+		}
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * If the classes should be transformed with a
+	 * {@link CompactOWL2EcoreTransformer} instead of KOMMA entities.
+	 */
+	public boolean isCompactEngine() {
+		return compactEngine;
+	}
+
+	/**
+	 * If the classes should be transformed with a
+	 * {@link CompactOWL2EcoreTransformer} that works on a compact in-memory
+	 * copy of the normalized ontology instead of KOMMA entities. If the
+	 * normalized ontology is cached then it is directly parsed into the
+	 * compact graph without creating a repository.
+	 * 
+	 * @param compactEngine
+	 *            <code>true</code> to use the compact engine
+	 */
+	public void setCompactEngine(boolean compactEngine) {
+		this.compactEngine = compactEngine;
+	}
+
+	/**
+	 * Sets the monitor that is notified about the normalization.
+	 * 
+	 * @param monitor
+	 *            the monitor, must not be <code>null</code>
+	 */
+	public void setMonitor(ConversionMonitor monitor) {
+		this.monitor = monitor;
+	}
+
 	public void init() throws Exception {
+		long start = monitor.isEnabled() ? System.nanoTime() : 0;
+		File cacheFile = null;
+		compactSource = null;
+		if (normalizationCache != null && inputFingerprint != null) {
+			cacheFile = new File(normalizationCache, cacheKey() + ".nt");
+			if (cacheFile.exists()) {
+				if (compactEngine) {
+					logger.info("Using normalized statements from {}",
+							cacheFile);
+					compactSource = cacheFile;
+				} else {
+					logger.info("Using normalized repository from {}",
+							cacheFile);
+					replaceRepository(loadRepository(cacheFile), true);
+				}
+				if (monitor.isEnabled()) {
+					monitor.normalized(true, System.nanoTime() - start);
+				}
+				return;
+			}
+		}
+
+		if (scopedNormalization) {
+			replaceRepository(createScopedRepository(), true);
+		}
+
 		OwlNormalizer normalizer = new OwlNormalizer();
 		final ISesameManager manager = factory.createKommaManager();
 		normalizer.setSesameManager(manager);
 		normalizer.normalize();
 		manager.close();
+
+		if (cacheFile != null) {
+			saveRepository(cacheFile);
+		}
+		if (monitor.isEnabled()) {
+			monitor.normalized(false, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Computes the cache key from the input fingerprint and all settings that
+	 * influence the result of the normalization.
+	 */
+	private String cacheKey() throws NoSuchAlgorithmException,
+			UnsupportedEncodingException {
+		List<String> namespaces = new ArrayList<String>(packages.keySet());
+		Collections.sort(namespaces);
+
+		MessageDigest digest = MessageDigest.getInstance("SHA-1");
+		digest.update(inputFingerprint.getBytes("UTF-8"));
+		digest.update((byte) (scopedNormalization ? 1 : 0));
+		for (String namespace : namespaces) {
+			digest.update(namespace.getBytes("UTF-8"));
+			digest.update((byte) 0);
+		}
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest()) {
+			key.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Creates a new repository that only contains the contexts that describe
+	 * resources of the bound namespaces and the contexts describing the
+	 * namespaces that are referenced by them.
+	 */
+	private Repository createScopedRepository() throws StoreException {
+		// namespace -> contexts with subjects in this namespace
+		Map<String, Set<Resource>> definingContexts = new HashMap<String, Set<Resource>>();
+		// context -> namespaces referenced within this context
+		Map<Resource, Set<String>> referencedNamespaces = new HashMap<Resource, Set<String>>();
+
+		RepositoryConnection conn = repository.getConnection();
+		try {
+			Result<Statement> stmts = conn.match((Resource) null, null, null,
+					false);
+			try {
+				while (stmts.hasNext()) {
+					Statement stmt = stmts.next();
+					Resource context = stmt.getContext();
+					if (stmt.getSubject() instanceof org.openrdf.model.URI) {
+						String namespace = ((org.openrdf.model.URI) stmt
+								.getSubject()).getNamespace();
+						Set<Resource> contexts = definingContexts
+								.get(namespace);
+						if (contexts == null) {
+							contexts = new HashSet<Resource>();
+							definingContexts.put(namespace, contexts);
+						}
+						contexts.add(context);
+					}
+					Set<String> namespaces = referencedNamespaces
+							.get(context);
+					if (namespaces == null) {
+						namespaces = new HashSet<String>();
+						referencedNamespaces.put(context, namespaces);
+					}
+					namespaces.add(stmt.getPredicate().getNamespace());
+					Value object = stmt.getObject();
+					if (object instanceof org.openrdf.model.URI) {
+						namespaces.add(((org.openrdf.model.URI) object)
+								.getNamespace());
+					}
+				}
+			} finally {
+				stmts.close();
+			}
+
+			// compute the closure of required contexts
+			Set<Resource> contexts = new HashSet<Resource>();
+			Set<String> visited = new HashSet<String>(packages.keySet());
+			LinkedList<String> queue = new LinkedList<String>(visited);
+			while (!queue.isEmpty()) {
+				Set<Resource> defining = definingContexts.get(queue
+						.removeFirst());
+				if (defining == null) {
+					continue;
+				}
+				for (Resource context : defining) {
+					if (contexts.add(context)) {
+						for (String namespace : referencedNamespaces
+								.get(context)) {
+							if (visited.add(namespace)) {
+								queue.add(namespace);
+							}
+						}
+					}
+				}
+			}
+			logger.info("Normalizing {} of {} contexts", contexts.size(),
+					referencedNamespaces.size());
+
+			Repository scoped = new SailRepository(new MemoryStore());
+			scoped.initialize();
+			RepositoryConnection scopedConn = scoped.getConnection();
+			try {
+				for (Namespace namespace : conn.getNamespaces().asList()) {
+					scopedConn.setNamespace(namespace.getPrefix(), namespace
+							.getName());
+				}
+				// an empty context array would match the whole repository
+				if (!contexts.isEmpty()) {
+					Result<Statement> scopedStmts = conn.match(
+							(Resource) null, null, null, false, contexts
+									.toArray(new Resource[contexts.size()]));
+					try {
+						while (scopedStmts.hasNext()) {
+							scopedConn.add(scopedStmts.next());
+						}
+					} finally {
+						scopedStmts.close();
+					}
+				}
+			} finally {
+				scopedConn.close();
+			}
+			return scoped;
+		} finally {
+			conn.close();
+		}
+	}
+
+	private Repository loadRepository(File file) throws StoreException,
+			IOException, RDFParseException {
+		Repository cached = new SailRepository(new MemoryStore());
+		cached.initialize();
+		RepositoryConnection conn = cached.getConnection();
+		InputStream in = new FileInputStream(file);
+		try {
+			conn.add(in, "", RDFFormat.NTRIPLES);
+		} finally {
+			in.close();
+			conn.close();
+		}
+		return cached;
+	}
+
+	private void saveRepository(File file) throws StoreException,
+			IOException, RDFHandlerException {
+		file.getParentFile().mkdirs();
+		// write to a temporary file first to never leave a truncated entry,
+		// concurrent conversions with the same cache key use distinct files
+		File tmpFile = File.createTempFile(file.getName(), ".tmp", file
+				.getParentFile());
+		OutputStream out = new FileOutputStream(tmpFile);
+		boolean written = false;
+		try {
+			NTriplesWriter writer = new NTriplesWriter(out);
+			writer.startRDF();
+			RepositoryConnection conn = repository.getConnection();
+			try {
+				Result<Statement> stmts = conn.match((Resource) null, null, null,
+					false);
+				try {
+					while (stmts.hasNext()) {
+						writer.handleStatement(stmts.next());
+					}
+				} finally {
+					stmts.close();
+				}
+			} finally {
+				conn.close();
+			}
+			writer.endRDF();
+			written = true;
+		} finally {
+			out.close();
+			if (!written) {
+				tmpFile.delete();
+			}
+		}
+		if (!tmpFile.renameTo(file)) {
+			tmpFile.delete();
+			// another conversion may have stored the same entry
+			if (!file.exists()) {
+				logger.warn("Unable to store normalized repository in {}",
+						file);
+			}
+		}
+	}
+
+	/**
+	 * Creates a compact copy of the normalized ontology.
+	 */
+	CompactGraph createCompactGraph() throws Exception {
+		CompactGraph.Builder builder = new CompactGraph.Builder();
+		if (compactSource != null) {
+			InputStream in = new BufferedInputStream(new FileInputStream(
+					compactSource), 65536);
+			try {
+				NTriplesParser parser = new NTriplesParser();
+				parser.setRDFHandler(builder);
+				parser.parse(in, "");
+			} finally {
+				in.close();
+			}
+		} else {
+			RepositoryConnection conn = repository.getConnection();
+			try {
+				Result<Statement> stmts = conn.match((Resource) null, null,
+						null, false);
+				try {
+					while (stmts.hasNext()) {
+						builder.add(stmts.next());
+					}
+				} finally {
+					stmts.close();
+				}
+			} finally {
+				conn.close();
+			}
+		}
+		return builder.build();
 	}
 
 	public void exportECore(final OWL2EcoreTransformer transformer)
 			throws Exception {
+		if (compactEngine) {
+			CompactGraph graph = createCompactGraph();
+			logger.info("Transforming {} statements", graph.size());
+			CompactOWL2EcoreTransformer compactTransformer = new CompactOWL2EcoreTransformer(
+					graph, transformer.ePackages, transformer.packages);
+			compactTransformer.setMergeAnnotations(transformer
+					.isMergeAnnotations());
+			compactTransformer.setMonitor(transformer.monitor);
+			Exception exception = compactTransformer.transform(packages
+					.keySet());
+			if (exception != null)
+				throw exception;
+			return;
+		}
 		final IKommaManager manager = factory.createKommaManager();
+		// the queries of the transformer are parsed once for the whole export
+		QueryCache queries = new QueryCache(manager);
+		transformer.setQueryCache(queries);
+		// the first error that occurred during this export
+		Exception exception = null;
 		try {
-			IQuery<IEntity> query = manager.createQuery(SELECT_CLASSES)
-					.bindResultType(IEntity.class);
-			for (IEntity bean : query.evaluate()) {
-				if (bean.getURI() == null)
-					continue;
-				final String namespace = bean.getURI().namespace().toString();
-				if (packages.containsKey(namespace)) {
-					buildClassOrDatatype(bean, namespace, manager, transformer);
+			// the class URIs are collected before transforming to not keep
+			// a cursor open, only one page of entities is held at a time
+			List<IEntity> page = new ArrayList<IEntity>(pageSize);
+			for (Set<String> uris : findClasses()) {
+				Iterator<String> it = uris.iterator();
+				while (it.hasNext()) {
+					page.clear();
+					while (it.hasNext() && page.size() < pageSize) {
+						page.add(manager.find(URIImpl.createURI(it.next())));
+					}
+					for (IEntity bean : page) {
+						Exception exc = buildClassOrDatatype(bean, manager,
+								transformer);
+						if (exception == null) {
+							exception = exc;
+						}
+					}
 				}
 			}
+			transformer.finish();
+			logger.debug("Query cache: {}", queries);
 			if (exception != null)
 				throw exception;
 		} finally {
+			transformer.setQueryCache(null);
 			manager.close();
 		}
 	}
 
-	private void buildClassOrDatatype(IEntity bean, String namespace,
+	/**
+	 * Returns the URIs of all classes and datatypes of the bound namespaces
+	 * grouped and ordered by namespace and ordered by URI within each
+	 * namespace. The type statements are read through the type index of the
+	 * repository and filtered by namespace, only the URIs are kept in memory.
+	 */
+	private Collection<TreeSet<String>> findClasses() throws StoreException {
+		Map<String, TreeSet<String>> classes = new TreeMap<String, TreeSet<String>>();
+		for (String namespace : packages.keySet()) {
+			classes.put(namespace, new TreeSet<String>());
+		}
+		RepositoryConnection conn = repository.getConnection();
+		try {
+			ValueFactory vf = conn.getValueFactory();
+			org.openrdf.model.URI type = vf.createURI(RDF.NAMESPACE + "type");
+			for (String classType : CLASS_TYPES) {
+				Result<Statement> stmts = conn.match((Resource) null, type, vf
+						.createURI(classType), true);
+				try {
+					while (stmts.hasNext()) {
+						Resource bean = stmts.next().getSubject();
+						if (!(bean instanceof org.openrdf.model.URI)) {
+							continue;
+						}
+						// skips resources like ns#a/b with a longer namespace
+						TreeSet<String> uris = classes.get(URIImpl.createURI(
+								bean.stringValue()).namespace().toString());
+						if (uris != null) {
+							uris.add(bean.stringValue());
+						}
+					}
+				} finally {
+					stmts.close();
+				}
+			}
+		} finally {
+			conn.close();
+		}
+		return classes.values();
+	}
+
+	private Exception buildClassOrDatatype(IEntity bean,
 			IKommaManager manager, OWL2EcoreTransformer transformer) {
 		try {
 			transformer.owl2ecore(bean);
 		} catch (Exception exc) {
 			logger.error("Error processing {}", bean);
-			if (exception == null) {
-				exception = exc;
-			}
+			return exc;
 		}
+		return null;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.emf.ecore.EAnnotation;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EcoreFactory;
+
+/**
+ * Splits a large package into several packages with a limited number of
+ * classifiers. Classes are clustered by the root of their super class chain
+ * within the package, so that most super types are found in the same shard.
+ * Clusters are packed into shards in the order of the package, clusters that
+ * exceed the limit are split.
+ * <p>
+ * The first shard is the original package, the other shards are new
+ * packages with a derived name and namespace URI, e.g.
+ * <code>http://example.org/foo/shard1#</code> for the second shard of
+ * <code>http://example.org/foo#</code>, so that each shard can be registered
+ * by its own namespace URI. Each shard records the original namespace in an
+ * annotation with the source {@link #SHARD_SOURCE} that is used by
+ * {@link #namespace(EPackage)}, so that the classifiers of a converted shard
+ * keep the URIs of the original package. References between shards are
+ * saved as cross-document references if the shards are saved to different
+ * resources.
+ */
+class EcoreSharding {
+	/** source of the annotation that refers to the original namespace */
+	static final String SHARD_SOURCE = "http://enilink.net/vocab/komma#shardOf";
+
+	private EcoreSharding() {
+	}
+
+	/**
+	 * Splits the given package if it contains more than the given number of
+	 * classifiers.
+	 *
+	 * @param ePackage
+	 *            the package, its classifiers are moved into the other shards
+	 * @param maxClassifiers
+	 *            the maximum number of classifiers per shard
+	 * @return the shards, starting with the given package
+	 */
+	static List<EPackage> shard(EPackage ePackage, int maxClassifiers) {
+		List<EPackage> shards = new ArrayList<EPackage>();
+		shards.add(ePackage);
+		List<EClassifier> eClassifiers = ePackage.getEClassifiers();
+		if (maxClassifiers <= 0 || eClassifiers.size() <= maxClassifiers) {
+			return shards;
+		}
+
+		// root classifier -> cluster
+		Map<EClassifier, List<EClassifier>> clusters = new LinkedHashMap<EClassifier, List<EClassifier>>();
+		Map<EClassifier, EClassifier> roots = new HashMap<EClassifier, EClassifier>();
+		for (EClassifier eClassifier : eClassifiers) {
+			EClassifier root = root(eClassifier, roots);
+			List<EClassifier> cluster = clusters.get(root);
+			if (cluster == null) {
+				cluster = new ArrayList<EClassifier>();
+				clusters.put(root, cluster);
+			}
+			cluster.add(eClassifier);
+		}
+
+		// pack the clusters into groups of at most maxClassifiers elements
+		List<List<EClassifier>> groups = new ArrayList<List<EClassifier>>();
+		List<EClassifier> group = new ArrayList<EClassifier>();
+		for (List<EClassifier> cluster : clusters.values()) {
+			if (group.size() + cluster.size() > maxClassifiers
+					&& !group.isEmpty()) {
+				groups.add(group);
+				group = new ArrayList<EClassifier>();
+			}
+			for (EClassifier eClassifier : cluster) {
+				if (group.size() == maxClassifiers) {
+					groups.add(group);
+					group = new ArrayList<EClassifier>();
+				}
+				group.add(eClassifier);
+			}
+		}
+		groups.add(group);
+
+		// the first group stays within the original package
+		annotate(ePackage, ePackage.getNsURI());
+		for (int i = 1; i < groups.size(); i++) {
+			EPackage shard = EcoreFactory.eINSTANCE.createEPackage();
+			shard.setName(ePackage.getName() + "_" + i);
+			shard.setNsPrefix(ePackage.getNsPrefix() + "_" + i);
+			shard.setNsURI(shardURI(ePackage.getNsURI(), i));
+			annotate(shard, ePackage.getNsURI());
+			// moves the classifiers out of the original package
+			shard.getEClassifiers().addAll(groups.get(i));
+			shards.add(shard);
+		}
+		return shards;
+	}
+
+	/**
+	 * Returns the namespace of the classifiers of the given package. This is
+	 * the namespace of the original package for shards and the namespace URI
+	 * for all other packages.
+	 */
+	static String namespace(EPackage ePackage) {
+		EAnnotation annotation = ePackage.getEAnnotation(SHARD_SOURCE);
+		if (annotation != null) {
+			String namespace = annotation.getDetails().get("namespace");
+			if (namespace != null) {
+				return namespace;
+			}
+		}
+		return ePackage.getNsURI();
+	}
+
+	private static String shardURI(String nsURI, int index) {
+		String separator = "#";
+		if (nsURI.endsWith("#") || nsURI.endsWith("/")) {
+			separator = nsURI.substring(nsURI.length() - 1);
+			nsURI = nsURI.substring(0, nsURI.length() - 1);
+		}
+		return nsURI + "/shard" + index + separator;
+	}
+
+	private static void annotate(EPackage shard, String namespace) {
+		EAnnotation annotation = EcoreFactory.eINSTANCE.createEAnnotation();
+		annotation.setSource(SHARD_SOURCE);
+		annotation.getDetails().put("namespace", namespace);
+		shard.getEAnnotations().add(annotation);
+	}
+
+	/**
+	 * Returns the root of the first super class chain of a classifier
+	 * within its package. The roots of all visited classes are remembered.
+	 */
+	private static EClassifier root(EClassifier eClassifier,
+			Map<EClassifier, EClassifier> roots) {
+		Set<EClassifier> chain = new LinkedHashSet<EClassifier>();
+		EClassifier root = eClassifier;
+		while (!roots.containsKey(root) && !chain.contains(root)) {
+			chain.add(root);
+			EClassifier superType = null;
+			if (root instanceof EClass
+					&& !((EClass) root).getESuperTypes().isEmpty()) {
+				superType = ((EClass) root).getESuperTypes().get(0);
+			}
+			if (superType == null
+					|| superType.getEPackage() != eClassifier.getEPackage()) {
+				break;
+			}
+			root = superType;
+		}
+		if (roots.containsKey(root)) {
+			root = roots.get(root);
+		}
+		for (EClassifier visited : chain) {
+			roots.put(visited, root);
+		}
+		return root;
+	}
+}
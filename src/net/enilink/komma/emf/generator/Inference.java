@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+/**
+ * The inferences that are materialized after the RDF sources are loaded.
+ */
+public enum Inference {
+	/** Only the explicit statements are used. */
+	NONE,
+
+	/**
+	 * The closure of <code>rdfs:subPropertyOf</code>. Properties inherit the
+	 * domains and ranges of their super properties. The closure of
+	 * <code>rdfs:subClassOf</code> is not materialized to keep the direct
+	 * super types of the generated classes.
+	 */
+	LIGHT,
+
+	/**
+	 * All inferences of {@link #LIGHT} and the RDFS entailment rules for
+	 * instances (rdfs2, rdfs3, rdfs7 and rdfs9). The axiomatic triples and
+	 * the rules that only create reflexive or trivial statements are
+	 * omitted.
+	 */
+	RDFS;
+
+	/**
+	 * Returns the inference with the given case insensitive name.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the name is unknown
+	 */
+	public static Inference forName(String name) {
+		for (Inference inference : values()) {
+			if (inference.name().equalsIgnoreCase(name)) {
+				return inference;
+			}
+		}
+		throw new IllegalArgumentException("Unknown inference: " + name);
+	}
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.File;
+import java.net.URL;
+
+import org.eclipse.emf.ecore.EClassifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs the phases of a conversion and all elements whose transformation
+ * took longer than a threshold.
+ */
+public class LoggingConversionMonitor extends ConversionMonitor {
+	final Logger logger = LoggerFactory
+			.getLogger(LoggingConversionMonitor.class);
+
+	private final long thresholdNanos;
+
+	/**
+	 * Creates a monitor that reports elements which took at least the given
+	 * time.
+	 *
+	 * @param thresholdMillis
+	 *            the threshold in milliseconds
+	 */
+	public LoggingConversionMonitor(long thresholdMillis) {
+		this.thresholdNanos = thresholdMillis * 1000000;
+	}
+
+	private static long millis(long nanos) {
+		return nanos / 1000000;
+	}
+
+	@Override
+	public void sourceLoaded(URL url, long triples, long bytes, long nanos) {
+		logger.info("Loaded {} triples ({} bytes) from {} in {} ms",
+				new Object[] { triples, bytes, url, millis(nanos) });
+	}
+
+	@Override
+	public void normalized(boolean cached, long nanos) {
+		logger.info("Normalized repository {}in {} ms", cached ? "(cached) "
+				: "", millis(nanos));
+	}
+
+	@Override
+	public void classTransformed(String uri, long nanos) {
+		if (nanos >= thresholdNanos) {
+			logger.warn("Slow transformation of class {}: {} ms", uri,
+					millis(nanos));
+		}
+	}
+
+	@Override
+	public void classifierTransformed(EClassifier eClassifier, long nanos) {
+		if (nanos >= thresholdNanos) {
+			logger.warn("Slow transformation of classifier {}: {} ms",
+					eClassifier.getName(), millis(nanos));
+		}
+	}
+
+	@Override
+	public void fileSaved(File file, boolean changed, long nanos) {
+		logger.info("Saved {}{} in {} ms", new Object[] { file,
+				changed ? "" : " (unchanged)", millis(nanos) });
+	}
+}
@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.enilink.vocab.rdf.RDF;
+import net.enilink.vocab.rdfs.RDFS;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.result.Result;
+import org.openrdf.store.StoreException;
+
+/**
+ * Computes the statements that are entailed by the statements of a
+ * repository according to an {@link Inference}.
+ * <p>
+ * The schema is taken from the explicit statements. Each inferred statement
+ * is put into the context of the statement it was derived from, e.g. the
+ * type of an instance is inferred in the context of the instance's
+ * statement, so the inferences of an ontology stay within the ontology's
+ * context.
+ * <p>
+ * The closure of <code>rdfs:subClassOf</code> (rdfs11) is only used to infer
+ * types but not materialized itself, as each inferred super class would
+ * become a direct super type of the generated ECore classes.
+ * <p>
+ * The statements of the repository are read twice instead of being kept in
+ * memory, once for the schema and once for the instances.
+ */
+class Materializer {
+	/** changes if the inferred statements for the same input change */
+	static final int VERSION = 2;
+
+	private static final String TYPE = RDF.NAMESPACE + "type";
+
+	private static final String SUB_CLASS_OF = RDFS.NAMESPACE + "subClassOf";
+
+	private static final String SUB_PROPERTY_OF = RDFS.NAMESPACE
+			+ "subPropertyOf";
+
+	private static final String DOMAIN = RDFS.NAMESPACE + "domain";
+
+	private static final String RANGE = RDFS.NAMESPACE + "range";
+
+	private final Inference inference;
+
+	private RepositoryConnection conn;
+
+	private ValueFactory vf;
+
+	private URI type, subPropertyOf, domain, range;
+
+	private final Map<List<Value>, Statement> inferred = new LinkedHashMap<List<Value>, Statement>();
+
+	/** resource -&gt; direct super resource -&gt; context of the statement */
+	private final Map<Resource, Map<Resource, Resource>> superClasses = new LinkedHashMap<Resource, Map<Resource, Resource>>();
+
+	private final Map<Resource, Map<Resource, Resource>> superProperties = new LinkedHashMap<Resource, Map<Resource, Resource>>();
+
+	/** resource -&gt; all super resources -&gt; context of the first statement */
+	private final Map<Resource, Map<Resource, Resource>> classClosures = new HashMap<Resource, Map<Resource, Resource>>();
+
+	private final Map<Resource, Map<Resource, Resource>> propertyClosures = new HashMap<Resource, Map<Resource, Resource>>();
+
+	private final Map<Resource, Set<Resource>> domains = new HashMap<Resource, Set<Resource>>();
+
+	private final Map<Resource, Set<Resource>> ranges = new HashMap<Resource, Set<Resource>>();
+
+	Materializer(Inference inference) {
+		this.inference = inference;
+	}
+
+	/**
+	 * Returns the statements that are entailed by the statements of the
+	 * given connection but not yet contained in it.
+	 */
+	List<Statement> infer(RepositoryConnection conn) throws StoreException {
+		this.conn = conn;
+		vf = conn.getValueFactory();
+		type = vf.createURI(TYPE);
+		subPropertyOf = vf.createURI(SUB_PROPERTY_OF);
+		domain = vf.createURI(DOMAIN);
+		range = vf.createURI(RANGE);
+		if (inference == Inference.NONE) {
+			return Collections.emptyList();
+		}
+
+		Result<Statement> result = conn.match((Resource) null, null, null,
+				false);
+		try {
+			while (result.hasNext()) {
+				readSchema(result.next());
+			}
+		} finally {
+			result.close();
+		}
+
+		inferSchema();
+		if (inference == Inference.RDFS) {
+			result = conn.match((Resource) null, null, null, false);
+			try {
+				while (result.hasNext()) {
+					inferInstances(result.next());
+				}
+			} finally {
+				result.close();
+			}
+		}
+		return new ArrayList<Statement>(inferred.values());
+	}
+
+	private void readSchema(Statement stmt) {
+		if (!(stmt.getObject() instanceof Resource)) {
+			return;
+		}
+		Resource object = (Resource) stmt.getObject();
+		String predicate = stmt.getPredicate().toString();
+		if (SUB_CLASS_OF.equals(predicate)) {
+			addEdge(superClasses, stmt.getSubject(), object, stmt
+					.getContext());
+		} else if (SUB_PROPERTY_OF.equals(predicate)) {
+			addEdge(superProperties, stmt.getSubject(), object, stmt
+					.getContext());
+		} else if (DOMAIN.equals(predicate)) {
+			addValue(domains, stmt.getSubject(), object);
+		} else if (RANGE.equals(predicate)) {
+			addValue(ranges, stmt.getSubject(), object);
+		}
+	}
+
+	private static void addEdge(Map<Resource, Map<Resource, Resource>> edges,
+			Resource subject, Resource object, Resource context) {
+		Map<Resource, Resource> objects = edges.get(subject);
+		if (objects == null) {
+			objects = new LinkedHashMap<Resource, Resource>();
+			edges.put(subject, objects);
+		}
+		if (!objects.containsKey(object)) {
+			objects.put(object, context);
+		}
+	}
+
+	private static void addValue(Map<Resource, Set<Resource>> values,
+			Resource subject, Resource object) {
+		Set<Resource> objects = values.get(subject);
+		if (objects == null) {
+			objects = new LinkedHashSet<Resource>();
+			values.put(subject, objects);
+		}
+		objects.add(object);
+	}
+
+	/**
+	 * Returns the transitive super resources of a resource. Each super
+	 * resource is mapped to the context of the first statement on the path
+	 * to it.
+	 */
+	private static Map<Resource, Resource> closure(
+			Map<Resource, Map<Resource, Resource>> edges,
+			Map<Resource, Map<Resource, Resource>> closures, Resource start) {
+		Map<Resource, Resource> closure = closures.get(start);
+		if (closure != null) {
+			return closure;
+		}
+		closure = new LinkedHashMap<Resource, Resource>();
+		Map<Resource, Resource> direct = edges.get(start);
+		if (direct != null) {
+			LinkedList<Resource> queue = new LinkedList<Resource>();
+			for (Map.Entry<Resource, Resource> edge : direct.entrySet()) {
+				if (!edge.getKey().equals(start)) {
+					closure.put(edge.getKey(), edge.getValue());
+					queue.add(edge.getKey());
+				}
+			}
+			while (!queue.isEmpty()) {
+				Resource node = queue.removeFirst();
+				Map<Resource, Resource> next = edges.get(node);
+				if (next == null) {
+					continue;
+				}
+				for (Resource superResource : next.keySet()) {
+					if (!superResource.equals(start)
+							&& !closure.containsKey(superResource)) {
+						closure.put(superResource, closure.get(node));
+						queue.add(superResource);
+					}
+				}
+			}
+		}
+		closures.put(start, closure);
+		return closure;
+	}
+
+	private Map<Resource, Resource> superClasses(Resource clazz) {
+		return closure(superClasses, classClosures, clazz);
+	}
+
+	private Map<Resource, Resource> superProperties(Resource property) {
+		return closure(superProperties, propertyClosures, property);
+	}
+
+	private void inferSchema() throws StoreException {
+		// rdfs5 and the inheritance of domains and ranges
+		for (Resource property : superProperties.keySet()) {
+			for (Map.Entry<Resource, Resource> superProperty : superProperties(
+					property).entrySet()) {
+				Resource context = superProperty.getValue();
+				add(property, subPropertyOf, superProperty.getKey(), context);
+				for (Resource value : values(domains, superProperty.getKey())) {
+					add(property, domain, value, context);
+				}
+				for (Resource value : values(ranges, superProperty.getKey())) {
+					add(property, range, value, context);
+				}
+			}
+		}
+	}
+
+	private void inferInstances(Statement stmt) throws StoreException {
+		Resource subject = stmt.getSubject();
+		URI predicate = stmt.getPredicate();
+		Value object = stmt.getObject();
+		Resource context = stmt.getContext();
+
+		List<Resource> properties = new ArrayList<Resource>();
+		properties.add(predicate);
+		// rdfs7
+		for (Resource superProperty : superProperties(predicate)
+				.keySet()) {
+			if (superProperty instanceof URI) {
+				add(subject, (URI) superProperty, object, context);
+			}
+			properties.add(superProperty);
+		}
+		// rdfs2 and rdfs3
+		for (Resource property : properties) {
+			for (Resource clazz : values(domains, property)) {
+				addType(subject, clazz, context);
+			}
+			if (object instanceof Resource) {
+				for (Resource clazz : values(ranges, property)) {
+					addType((Resource) object, clazz, context);
+				}
+			}
+		}
+		// rdfs9
+		if (TYPE.equals(predicate.toString()) && object instanceof Resource) {
+			for (Resource superClass : superClasses(
+					(Resource) object).keySet()) {
+				add(subject, type, superClass, context);
+			}
+		}
+	}
+
+	private void addType(Resource resource, Resource clazz, Resource context)
+			throws StoreException {
+		add(resource, type, clazz, context);
+		for (Resource superClass : superClasses(clazz).keySet()) {
+			add(resource, type, superClass, context);
+		}
+	}
+
+	private static Set<Resource> values(Map<Resource, Set<Resource>> values,
+			Resource subject) {
+		Set<Resource> objects = values.get(subject);
+		return objects != null ? objects : Collections.<Resource> emptySet();
+	}
+
+	private void add(Resource subject, URI predicate, Value object,
+			Resource context) throws StoreException {
+		List<Value> key = key(subject, predicate, object, context);
+		if (!inferred.containsKey(key)
+				&& !isExplicit(subject, predicate, object, context)) {
+			inferred.put(key, vf.createStatement(subject, predicate, object,
+					context));
+		}
+	}
+
+	private boolean isExplicit(Resource subject, URI predicate, Value object,
+			Resource context) throws StoreException {
+		// a null context only matches the default context
+		Result<Statement> stmts = conn.match(subject, predicate, object,
+				false, context);
+		try {
+			return stmts.hasNext();
+		} finally {
+			stmts.close();
+		}
+	}
+
+	private static List<Value> key(Resource subject, URI predicate,
+			Value object, Resource context) {
+		return Arrays.<Value> asList(subject, predicate, object, context);
+	}
+}
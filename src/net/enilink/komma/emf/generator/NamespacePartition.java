@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+
+/**
+ * Partitions statements by the namespace of their subjects. Each partition
+ * contains the statements about the resources of one namespace together with
+ * the statements about all blank nodes that are reachable from them, e.g. the
+ * nodes of RDF lists and anonymous restrictions. Statements about resources
+ * of other namespaces are dropped.
+ * <p>
+ * A resource belongs to the longest namespace that is a prefix of its URI
+ * and either ends with <code>#</code> or <code>/</code> or is followed by
+ * one of these characters or by the end of the URI. The statements are added
+ * one by one, so they can be streamed from a repository.
+ */
+class NamespacePartition {
+	private final List<String> namespaces;
+
+	private final boolean split;
+
+	private final Map<String, List<Statement>> partitions = new TreeMap<String, List<Statement>>();
+
+	private final Map<BNode, List<Statement>> blankNodes = new HashMap<BNode, List<Statement>>();
+
+	/**
+	 * Creates a partition for the given namespaces.
+	 * 
+	 * @param namespaces
+	 *            the namespaces whose resources are retained
+	 * @param split
+	 *            <code>true</code> to create one partition per namespace,
+	 *            <code>false</code> to collect the statements of all
+	 *            namespaces in one partition
+	 */
+	NamespacePartition(Collection<String> namespaces, boolean split) {
+		this.namespaces = new ArrayList<String>(namespaces);
+		this.split = split;
+		List<Statement> all = null;
+		for (String namespace : namespaces) {
+			if (split || all == null) {
+				all = new ArrayList<Statement>();
+			}
+			partitions.put(namespace, all);
+		}
+	}
+
+	/**
+	 * Adds a statement to the partition of its subject's namespace.
+	 */
+	void add(Statement stmt) {
+		if (stmt.getSubject() instanceof BNode) {
+			List<Statement> nodeStmts = blankNodes.get(stmt.getSubject());
+			if (nodeStmts == null) {
+				nodeStmts = new ArrayList<Statement>();
+				blankNodes.put((BNode) stmt.getSubject(), nodeStmts);
+			}
+			nodeStmts.add(stmt);
+		} else if (stmt.getSubject() instanceof URI) {
+			String namespace = namespaceOf((URI) stmt.getSubject());
+			if (namespace != null) {
+				partitions.get(namespace).add(stmt);
+			}
+		}
+	}
+
+	/**
+	 * Returns the statements for each namespace ordered by namespace. A blank
+	 * node closure is contained in every partition that refers to it. If the
+	 * statements are not split then all namespaces are mapped to the same
+	 * list.
+	 */
+	Map<String, List<Statement>> getPartitions() {
+		Set<List<Statement>> closed = Collections
+				.newSetFromMap(new IdentityHashMap<List<Statement>, Boolean>());
+		for (List<Statement> partition : partitions.values()) {
+			if (closed.add(partition)) {
+				addClosure(partition);
+			}
+		}
+		blankNodes.clear();
+		return partitions;
+	}
+
+	/**
+	 * Returns the statements of all namespaces if they are not split.
+	 */
+	List<Statement> getStatements() {
+		if (split) {
+			throw new IllegalStateException("Statements are split");
+		}
+		Iterator<List<Statement>> it = getPartitions().values().iterator();
+		return it.hasNext() ? it.next() : new ArrayList<Statement>();
+	}
+
+	/**
+	 * Adds the statements about all blank nodes that are reachable from the
+	 * statements of the partition.
+	 */
+	private void addClosure(List<Statement> partition) {
+		Set<BNode> seen = new HashSet<BNode>();
+		// the partition grows while it is traversed
+		for (int i = 0; i < partition.size(); i++) {
+			Statement stmt = partition.get(i);
+			if (stmt.getObject() instanceof BNode
+					&& seen.add((BNode) stmt.getObject())) {
+				List<Statement> nodeStmts = blankNodes.get(stmt.getObject());
+				if (nodeStmts != null) {
+					partition.addAll(nodeStmts);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the longest namespace that contains the given URI or
+	 * <code>null</code>.
+	 */
+	private String namespaceOf(URI uri) {
+		String value = uri.stringValue();
+		String match = null;
+		for (String namespace : namespaces) {
+			if (value.startsWith(namespace)
+					&& (match == null || namespace.length() > match.length())
+					&& isBoundary(value, namespace)) {
+				match = namespace;
+			}
+		}
+		return match;
+	}
+
+	private static boolean isBoundary(String value, String namespace) {
+		if (value.length() == namespace.length() || namespace.endsWith("#")
+				|| namespace.endsWith("/")) {
+			return true;
+		}
+		char next = value.charAt(namespace.length());
+		return next == '#' || next == '/';
+	}
+}
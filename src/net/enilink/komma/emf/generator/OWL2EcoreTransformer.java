@@ -11,12 +11,20 @@
 package net.enilink.komma.emf.generator;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.EMap;
 import org.eclipse.emf.ecore.EAnnotation;
 import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EClassifier;
@@ -28,6 +36,7 @@ import org.eclipse.emf.ecore.EReference;
 import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.EcoreFactory;
 import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.util.InternalEList;
 
 import net.enilink.vocab.owl.DataRange;
 import net.enilink.vocab.owl.FunctionalProperty;
@@ -37,6 +46,7 @@ import net.enilink.vocab.owl.ObjectProperty;
 import net.enilink.vocab.owl.SymmetricProperty;
 import net.enilink.vocab.owl.TransitiveProperty;
 import net.enilink.vocab.rdf.Property;
+import net.enilink.vocab.rdf.RDF;
 import net.enilink.vocab.rdfs.Datatype;
 import net.enilink.vocab.rdfs.RDFS;
 import net.enilink.vocab.xmlschema.XMLSCHEMA;
@@ -44,14 +54,86 @@ import net.enilink.komma.concepts.IClass;
 import net.enilink.komma.concepts.IProperty;
 import net.enilink.komma.concepts.IResource;
 import net.enilink.komma.core.IEntity;
+import net.enilink.komma.core.IKommaManager;
 import net.enilink.komma.core.ILiteral;
 import net.enilink.komma.core.IQuery;
 import net.enilink.komma.core.URI;
 
 public class OWL2EcoreTransformer {
+	/**
+	 * Orders entities by their URI and literals by their label to create
+	 * reproducible results.
+	 */
+	private static final Comparator<Object> VALUE_ORDER = new Comparator<Object>() {
+		public int compare(Object a, Object b) {
+			return key(a).compareTo(key(b));
+		}
+
+		private String key(Object value) {
+			if (value instanceof IEntity) {
+				URI uri = ((IEntity) value).getURI();
+				return uri != null ? uri.toString() : "";
+			} else if (value instanceof ILiteral) {
+				return ((ILiteral) value).getLabel();
+			}
+			return String.valueOf(value);
+		}
+	};
+
+	private static final String VALUE_KEY = "value";
+
+	private static final String SELECT_PROPERTIES = "PREFIX rdfs: <"
+			+ RDFS.NAMESPACE + "> "
+			+ "SELECT DISTINCT ?prop WHERE { ?prop rdfs:domain ?clazz } "
+			+ "ORDER BY ?prop";
+
+	private static final String SELECT_ENUMERATIONS = "PREFIX owl: <"
+			+ OWL.NAMESPACE + "> "
+			+ "SELECT ?class ?list WHERE { ?class owl:oneOf ?list }";
+
+	private static final String SELECT_LIST_NODES = "PREFIX rdf: <"
+			+ RDF.NAMESPACE + "> SELECT ?node ?first ?rest "
+			+ "WHERE { ?node rdf:first ?first ; rdf:rest ?rest }";
+
+	/** the predicates are bound to not scan all statements of the store */
+	private static final String SELECT_COMMENTS = "PREFIX rdfs: <"
+			+ RDFS.NAMESPACE + "> SELECT ?resource ?value "
+			+ "WHERE { ?resource rdfs:comment ?value }";
+
+	private static final String SELECT_LABELS = "PREFIX rdfs: <"
+			+ RDFS.NAMESPACE + "> SELECT ?resource ?value "
+			+ "WHERE { ?resource rdfs:label ?value }";
+
+	private static final String SELECT_DEFINED_BY = "PREFIX rdfs: <"
+			+ RDFS.NAMESPACE + "> SELECT ?resource ?value "
+			+ "WHERE { ?resource rdfs:isDefinedBy ?value }";
+
 	Map<String, String> packages;
 	Map<String, EPackage> ePackages;
 	Map<IEntity, EModelElement> owl2ecoreMap = new HashMap<IEntity, EModelElement>();
+	/** features of each class, attached by {@link #finish()} */
+	Map<EClass, Set<EStructuralFeature>> features = new LinkedHashMap<EClass, Set<EStructuralFeature>>();
+	/** subclass relations between named classes, wired by {@link #finish()} */
+	Map<EClass, Set<EClass>> superClasses = new LinkedHashMap<EClass, Set<EClass>>();
+	/** canonical instances of annotation sources and values */
+	Map<String, String> strings = new HashMap<String, String>();
+	boolean mergeAnnotations;
+	ConversionMonitor monitor = ConversionMonitor.NONE;
+	/** prepared queries of the manager of the transformed classes */
+	QueryCache queries;
+	/** prefetched members of all enumerated classes */
+	Map<Object, List<Object>> enumerations;
+	/** prefetched annotations of all enumeration members */
+	Map<Object, Annotations> memberAnnotations;
+
+	/**
+	 * The values of a resource that are transformed into annotations.
+	 */
+	static class Annotations {
+		final List<Object> comments = new ArrayList<Object>();
+		final List<Object> definedBy = new ArrayList<Object>();
+		final List<Object> labels = new ArrayList<Object>();
+	}
 
 	public OWL2EcoreTransformer(Map<String, EPackage> ePackages,
 			Map<String, String> packages) {
@@ -59,7 +141,7 @@ public class OWL2EcoreTransformer {
 		this.packages = packages;
 	}
 
-	private EPackage ensurePackage(String namespace) {
+	EPackage ensurePackage(String namespace) {
 		EPackage ePackage = ePackages.get(namespace);
 		if (ePackage == null) {
 			ePackage = EcoreFactory.eINSTANCE.createEPackage();
@@ -80,28 +162,78 @@ public class OWL2EcoreTransformer {
 
 	private Iterator<?> getPropertiesForClass(
 			net.enilink.vocab.rdfs.Class clazz) {
-		IQuery<?> query = clazz
-				.getKommaManager()
-				.createQuery(
-						"PREFIX rdfs: <"
-								+ RDFS.NAMESPACE
-								+ "> "
-								+ "SELECT DISTINCT ?prop WHERE { ?prop rdfs:domain ?clazz }");
+		IKommaManager manager = clazz.getKommaManager();
+		if (queries != null && queries.getManager() == manager) {
+			return queries.evaluate(SELECT_PROPERTIES, null, "clazz", clazz)
+					.iterator();
+		}
+		IQuery<?> query = manager.createQuery(SELECT_PROPERTIES);
 		query.setParameter("clazz", clazz);
 		return query.evaluate();
 	}
 
+	private static <T> List<T> sorted(Iterable<T> values) {
+		List<T> list = new ArrayList<T>();
+		for (T value : values) {
+			list.add(value);
+		}
+		Collections.sort(list, VALUE_ORDER);
+		return list;
+	}
+
+	/**
+	 * If all annotations of an element with the same source should be merged
+	 * into one annotation with multiple details.
+	 */
+	public boolean isMergeAnnotations() {
+		return mergeAnnotations;
+	}
+
+	/**
+	 * If all annotations of an element with the same source should be merged
+	 * into one annotation with multiple details. The values are stored with
+	 * the keys <code>value</code>, <code>value1</code>, <code>value2</code>
+	 * and so on.
+	 * 
+	 * @param mergeAnnotations
+	 *            <code>true</code> if annotations should be merged
+	 */
+	public void setMergeAnnotations(boolean mergeAnnotations) {
+		this.mergeAnnotations = mergeAnnotations;
+	}
+
+	/**
+	 * Returns a canonical instance of the given string. Annotation sources
+	 * and many values (e.g. the URI of the defining ontology) are repeated
+	 * for lots of elements and are therefore shared.
+	 */
+	protected String intern(String value) {
+		String interned = strings.get(value);
+		if (interned == null) {
+			strings.put(value, value);
+			interned = value;
+		}
+		return interned;
+	}
+
 	protected EAnnotation createAnnotation(Object uri) {
 		return createAnnotation(uri, null);
 	}
 
 	protected EAnnotation createAnnotation(Object uri, Object value) {
 		EAnnotation annotation = EcoreFactory.eINSTANCE.createEAnnotation();
-		annotation.setSource(String.valueOf(uri));
+		annotation.setSource(intern(String.valueOf(uri)));
+		addValue(annotation, value);
+		return annotation;
+	}
+
+	private void addValue(EAnnotation annotation, Object value) {
 		if (value != null) {
-			annotation.getDetails().put("value", String.valueOf(value));
+			EMap<String, String> details = annotation.getDetails();
+			String key = details.isEmpty() ? VALUE_KEY : intern(VALUE_KEY
+					+ details.size());
+			details.put(key, intern(String.valueOf(value)));
 		}
-		return annotation;
 	}
 
 	protected void addAnnotation(EModelElement eElement, Object uri) {
@@ -110,9 +242,36 @@ public class OWL2EcoreTransformer {
 
 	protected void addAnnotation(EModelElement eElement, Object uri,
 			String value) {
+		if (mergeAnnotations) {
+			EAnnotation annotation = eElement.getEAnnotation(String
+					.valueOf(uri));
+			if (annotation != null) {
+				addValue(annotation, value);
+				return;
+			}
+		}
 		eElement.getEAnnotations().add(createAnnotation(uri, value));
 	}
 
+	/**
+	 * Merges annotations with the same source if merging is enabled.
+	 */
+	List<EAnnotation> merge(List<EAnnotation> annotations) {
+		if (!mergeAnnotations || annotations.size() < 2) {
+			return annotations;
+		}
+		Map<String, EAnnotation> bySource = new LinkedHashMap<String, EAnnotation>();
+		for (EAnnotation annotation : annotations) {
+			EAnnotation existing = bySource.get(annotation.getSource());
+			if (existing == null) {
+				bySource.put(annotation.getSource(), annotation);
+			} else {
+				addValue(existing, annotation.getDetails().get(VALUE_KEY));
+			}
+		}
+		return new ArrayList<EAnnotation>(bySource.values());
+	}
+
 	protected void addComment(EModelElement eElement, String comment) {
 		addAnnotation(eElement, RDFS.PROPERTY_COMMENT.toString(), comment);
 	}
@@ -123,7 +282,140 @@ public class OWL2EcoreTransformer {
 				|| "http://www.w3.org/2000/01/rdf-schema#".equals(namespaceUri);
 	}
 
+	/**
+	 * Sets the monitor that is notified about each transformed class.
+	 * 
+	 * @param monitor
+	 *            the monitor, must not be <code>null</code>
+	 */
+	public void setMonitor(ConversionMonitor monitor) {
+		this.monitor = monitor;
+	}
+
+	/**
+	 * Sets the cache for the queries of this transformer. The cache is only
+	 * used for classes that belong to the cache's manager.
+	 */
+	void setQueryCache(QueryCache queries) {
+		this.queries = queries;
+		enumerations = null;
+		memberAnnotations = null;
+	}
+
+	/**
+	 * Reads the members of all enumerated classes and the annotations of the
+	 * members with a few queries instead of walking each RDF list node by
+	 * node through the entity proxies. The list nodes and annotations are
+	 * only read if there are enumerations. The enumerations are only
+	 * prefetched if a query cache for the manager of the given entity is set.
+	 * 
+	 * @return <code>true</code> if the enumerations are prefetched
+	 */
+	private boolean prefetchEnumerations(IEntity entity) {
+		if (queries == null || queries.getManager() != entity.getKommaManager()) {
+			return false;
+		}
+		if (enumerations != null) {
+			return true;
+		}
+
+		enumerations = new HashMap<Object, List<Object>>();
+		memberAnnotations = new HashMap<Object, Annotations>();
+		// most ontologies do not contain any enumerations
+		List<Object> enumerationRows = queries.evaluate(SELECT_ENUMERATIONS,
+				null);
+		if (enumerationRows.isEmpty()) {
+			return true;
+		}
+
+		// list node -> [node, first, rest]
+		Map<Object, Object[]> nodes = new HashMap<Object, Object[]>();
+		for (Object row : queries.evaluate(SELECT_LIST_NODES, null)) {
+			nodes.put(((Object[]) row)[0], (Object[]) row);
+		}
+
+		for (Object result : enumerationRows) {
+			Object[] row = (Object[]) result;
+			List<Object> members = new ArrayList<Object>();
+			Object node = row[1];
+			// bounded by the number of nodes to not loop on cyclic lists
+			for (int i = 0; i < nodes.size(); i++) {
+				Object[] listNode = nodes.get(node);
+				if (listNode == null) {
+					// rdf:nil or an incomplete list
+					break;
+				}
+				members.add(listNode[1]);
+				node = listNode[2];
+			}
+			if (!members.isEmpty()) {
+				enumerations.put(row[0], members);
+				for (Object member : members) {
+					memberAnnotations.put(member, new Annotations());
+				}
+			}
+		}
+		if (memberAnnotations.isEmpty()) {
+			return true;
+		}
+
+		for (Object result : queries.evaluate(SELECT_COMMENTS, null)) {
+			Annotations annotations = annotationsOf(result);
+			if (annotations != null) {
+				annotations.comments.add(((Object[]) result)[1]);
+			}
+		}
+		for (Object result : queries.evaluate(SELECT_LABELS, null)) {
+			Annotations annotations = annotationsOf(result);
+			if (annotations != null) {
+				annotations.labels.add(((Object[]) result)[1]);
+			}
+		}
+		for (Object result : queries.evaluate(SELECT_DEFINED_BY, null)) {
+			Annotations annotations = annotationsOf(result);
+			if (annotations != null) {
+				annotations.definedBy.add(((Object[]) result)[1]);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the annotations of the enumeration member that is the resource
+	 * of the given result row or <code>null</code>.
+	 */
+	private Annotations annotationsOf(Object result) {
+		return memberAnnotations.get(((Object[]) result)[0]);
+	}
+
+	/**
+	 * Transforms the given class or datatype into an EClassifier of the
+	 * package of its namespace.
+	 * <p>
+	 * The features and super types of the classifier are only collected by
+	 * this method. They are added with one bulk operation per class by
+	 * {@link #finish()}, which has to be called after all classes have been
+	 * transformed. Until then the transformed classes have no features and no
+	 * super types and {@link #getEPackages()} fails.
+	 * 
+	 * @param bean
+	 *            the class or datatype
+	 */
 	public void owl2ecore(IEntity bean) throws OWLTransformerException {
+		if (!monitor.isEnabled()) {
+			transform(bean);
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			transform(bean);
+		} finally {
+			long nanos = System.nanoTime() - start;
+			monitor.classTransformed(String.valueOf(bean.getURI()), nanos);
+		}
+	}
+
+	private void transform(IEntity bean) throws OWLTransformerException {
 		// don't map RDFS or OWL built-in types
 		if (isBuiltInResource(bean)) {
 			return;
@@ -138,26 +430,20 @@ public class OWL2EcoreTransformer {
 			net.enilink.vocab.owl.Class owlClass = (net.enilink.vocab.owl.Class) bean;
 
 			// RDFSSubClassOf -> EClass.eSuperType
-			for (net.enilink.vocab.rdfs.Class owlSuperClass : owlClass
-					.getRdfsSubClassOf()) {
+			for (net.enilink.vocab.rdfs.Class owlSuperClass : sorted(owlClass
+					.getRdfsSubClassOf())) {
 				if (!isNamedResource(owlSuperClass)
 						|| isBuiltInResource(owlSuperClass)) {
 					continue;
 				}
 				if (!owlSuperClass.equals(owlClass)
 						&& isNamedResource(owlSuperClass)) {
-					EClass eSuperClass = (EClass) owl2eclassifier(owlSuperClass);
-
-					// check whether eclass if father of eSuperClass
-					if (eSuperClass.getESuperTypes().contains(eClass)) {
-						eSuperClass.getESuperTypes().remove(eClass);
-
-						addAnnotation(eClass, OWL.PROPERTY_EQUIVALENTCLASS,
-								eSuperClass.getName());
-						addAnnotation(eSuperClass,
-								OWL.PROPERTY_EQUIVALENTCLASS, eClass.getName());
-					} else if (eClass instanceof EClass) {
-						((EClass) eClass).getESuperTypes().add(eSuperClass);
+					EClassifier eSuperClass = owl2eclassifier(owlSuperClass);
+
+					// super types are wired after all classes are known
+					if (eClass instanceof EClass
+							&& eSuperClass instanceof EClass) {
+						addSuperClass((EClass) eClass, (EClass) eSuperClass);
 					}
 				}
 			}
@@ -172,7 +458,8 @@ public class OWL2EcoreTransformer {
 					Set<ObjectProperty> inverseProperties = ((ObjectProperty) property)
 							.getOwlInverseOf();
 					if (inverseProperties != null) {
-						for (ObjectProperty inverseProperty : inverseProperties) {
+						for (ObjectProperty inverseProperty : sorted(
+								inverseProperties)) {
 							Set<net.enilink.vocab.rdfs.Class> rdfsDomains = inverseProperty
 									.getRdfsDomains();
 							if (rdfsDomains != null && !rdfsDomains.isEmpty()) {
@@ -186,12 +473,210 @@ public class OWL2EcoreTransformer {
 					}
 				}
 
-				// set domain
-				((EClass) eClass).getEStructuralFeatures().add(eProperty);
+				// set domain, features are attached by finish()
+				addFeature((EClass) eClass, eProperty);
 			}
 		}
 	}
 
+	void addSuperClass(EClass eClass, EClass eSuperClass) {
+		Set<EClass> eSuperClasses = superClasses.get(eClass);
+		if (eSuperClasses == null) {
+			eSuperClasses = new LinkedHashSet<EClass>();
+			superClasses.put(eClass, eSuperClasses);
+		}
+		eSuperClasses.add(eSuperClass);
+	}
+
+	void addFeature(EClass eClass, EStructuralFeature eFeature) {
+		Set<EStructuralFeature> eFeatures = features.get(eClass);
+		if (eFeatures == null) {
+			eFeatures = new LinkedHashSet<EStructuralFeature>();
+			features.put(eClass, eFeatures);
+		}
+		eFeatures.add(eFeature);
+	}
+
+	/**
+	 * Completes the transformation. This method has to be called after all
+	 * classes have been transformed with {@link #owl2ecore(IEntity)}.
+	 */
+	public void finish() {
+		attachFeatures();
+		wireSuperTypes();
+	}
+
+	/**
+	 * Returns the packages of the transformed classes by their namespaces.
+	 * 
+	 * @return the packages that were given to the constructor
+	 * @throws IllegalStateException
+	 *             if classes were transformed without calling
+	 *             {@link #finish()} afterwards
+	 */
+	public Map<String, EPackage> getEPackages() {
+		if (!features.isEmpty() || !superClasses.isEmpty()) {
+			throw new IllegalStateException(
+					"The transformation is incomplete, finish() was not called");
+		}
+		return ePackages;
+	}
+
+	/**
+	 * Adds the collected features to their classes with one bulk operation
+	 * per class. The features are already free of duplicates, which allows
+	 * to skip the uniqueness checks of EMF's lists.
+	 */
+	private void attachFeatures() {
+		for (Map.Entry<EClass, Set<EStructuralFeature>> entry : features
+				.entrySet()) {
+			EList<EStructuralFeature> eFeatures = entry.getKey()
+					.getEStructuralFeatures();
+			if (eFeatures.isEmpty()) {
+				((InternalEList<EStructuralFeature>) eFeatures)
+						.addAllUnique(entry.getValue());
+			} else {
+				eFeatures.addAll(entry.getValue());
+			}
+		}
+		features.clear();
+	}
+
+	/**
+	 * Adds the recorded subclass relations as super types of the
+	 * corresponding EClasses. Classes that are (directly or indirectly)
+	 * subclasses of each other form a strongly connected component of the
+	 * subclass graph. They are not related through super types but are
+	 * annotated as equivalent classes instead.
+	 * <p>
+	 * The components are computed with an iterative version of Tarjan's
+	 * algorithm which emits each component after all components that are
+	 * reachable from it. Super types are therefore wired in topological order
+	 * (super classes first) in a single pass.
+	 */
+	private void wireSuperTypes() {
+		Map<EClass, Integer> indexes = new HashMap<EClass, Integer>();
+		List<EClass> nodes = new ArrayList<EClass>();
+		for (Map.Entry<EClass, Set<EClass>> entry : superClasses.entrySet()) {
+			index(entry.getKey(), indexes, nodes);
+			for (EClass eSuperClass : entry.getValue()) {
+				index(eSuperClass, indexes, nodes);
+			}
+		}
+		int n = nodes.size();
+		int[][] edges = new int[n][];
+		for (int i = 0; i < n; i++) {
+			Set<EClass> eSuperClasses = superClasses.get(nodes.get(i));
+			edges[i] = new int[eSuperClasses == null ? 0 : eSuperClasses
+					.size()];
+			if (eSuperClasses != null) {
+				int j = 0;
+				for (EClass eSuperClass : eSuperClasses) {
+					edges[i][j++] = indexes.get(eSuperClass);
+				}
+			}
+		}
+		superClasses.clear();
+
+		int[] number = new int[n];
+		int[] lowLink = new int[n];
+		int[] component = new int[n];
+		Arrays.fill(number, -1);
+		boolean[] onStack = new boolean[n];
+		int[] stack = new int[n];
+		int stackSize = 0;
+		// explicit call stack: node and position in its edge list
+		int[] callNode = new int[n];
+		int[] callEdge = new int[n];
+		int nextNumber = 0;
+		int components = 0;
+		// pairs of equivalent classes that are already annotated
+		Set<Long> equivalentPairs = new HashSet<Long>();
+
+		for (int root = 0; root < n; root++) {
+			if (number[root] >= 0) {
+				continue;
+			}
+			int depth = 0;
+			callNode[0] = root;
+			callEdge[0] = 0;
+			number[root] = lowLink[root] = nextNumber++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			while (depth >= 0) {
+				int v = callNode[depth];
+				if (callEdge[depth] < edges[v].length) {
+					int w = edges[v][callEdge[depth]++];
+					if (number[w] < 0) {
+						// descend
+						number[w] = lowLink[w] = nextNumber++;
+						stack[stackSize++] = w;
+						onStack[w] = true;
+						depth++;
+						callNode[depth] = w;
+						callEdge[depth] = 0;
+					} else if (onStack[w]) {
+						lowLink[v] = Math.min(lowLink[v], number[w]);
+					}
+					continue;
+				}
+				if (lowLink[v] == number[v]) {
+					// v is the root of a component
+					int start = stackSize;
+					do {
+						onStack[stack[--start]] = false;
+						component[stack[start]] = components;
+					} while (stack[start] != v);
+					for (int i = start; i < stackSize; i++) {
+						wireSuperTypes(stack[i], nodes, edges, component,
+								equivalentPairs);
+					}
+					stackSize = start;
+					components++;
+				}
+				depth--;
+				if (depth >= 0) {
+					int parent = callNode[depth];
+					lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+				}
+			}
+		}
+	}
+
+	private void wireSuperTypes(int v, List<EClass> nodes, int[][] edges,
+			int[] component, Set<Long> equivalentPairs) {
+		EClass eClass = nodes.get(v);
+		List<EClass> eSuperTypes = new ArrayList<EClass>(edges[v].length);
+		for (int w : edges[v]) {
+			EClass eSuperClass = nodes.get(w);
+			if (component[w] != component[v]) {
+				eSuperTypes.add(eSuperClass);
+			} else if (v != w
+					&& equivalentPairs.add((long) Math.min(v, w)
+							* nodes.size() + Math.max(v, w))) {
+				addAnnotation(eClass, OWL.PROPERTY_EQUIVALENTCLASS,
+						eSuperClass.getName());
+				addAnnotation(eSuperClass, OWL.PROPERTY_EQUIVALENTCLASS,
+						eClass.getName());
+			}
+		}
+		// edges are unique, so the uniqueness check can be skipped
+		if (eClass.getESuperTypes().isEmpty()) {
+			((InternalEList<EClass>) eClass.getESuperTypes())
+					.addAllUnique(eSuperTypes);
+		} else {
+			eClass.getESuperTypes().addAll(eSuperTypes);
+		}
+	}
+
+	private static void index(EClass eClass, Map<EClass, Integer> indexes,
+			List<EClass> nodes) {
+		if (!indexes.containsKey(eClass)) {
+			indexes.put(eClass, nodes.size());
+			nodes.add(eClass);
+		}
+	}
+
 	private boolean isNamedResource(IEntity resource) {
 		return resource.getURI() != null;
 	}
@@ -204,11 +689,9 @@ public class OWL2EcoreTransformer {
 			EClassifier eRange = null;
 			if (range != null && !range.isEmpty()) {
 				// if property without range, leave it as null
-				eRange = (EClassifier) owl2ecoreMap
-						.get(range.iterator().next());
+				net.enilink.vocab.rdfs.Class rangeClass = sorted(range).get(0);
+				eRange = (EClassifier) owl2ecoreMap.get(rangeClass);
 
-				net.enilink.vocab.rdfs.Class rangeClass = range
-						.iterator().next();
 				if (rangeClass.getURI() != null) {
 					eRange = owl2eclassifier(rangeClass);
 				}
@@ -240,7 +723,7 @@ public class OWL2EcoreTransformer {
 			ep.setEType(eRange);
 
 			// subPropertyOf will be in eannoations
-			for (Property superProperty : p.getRdfsSubPropertyOf()) {
+			for (Property superProperty : sorted(p.getRdfsSubPropertyOf())) {
 				if (superProperty != null) {
 					addAnnotation(ep, RDFS.PROPERTY_SUBPROPERTYOF,
 							getName(superProperty));
@@ -257,8 +740,10 @@ public class OWL2EcoreTransformer {
 		return ep;
 	}
 
-	private static boolean isEnumeratedClass(
-			net.enilink.vocab.owl.Class owlClass) {
+	private boolean isEnumeratedClass(net.enilink.vocab.owl.Class owlClass) {
+		if (prefetchEnumerations(owlClass)) {
+			return enumerations.containsKey(owlClass);
+		}
 		List<?> oneOf = owlClass.getOwlOneOf();
 		return oneOf != null && !oneOf.isEmpty();
 	}
@@ -347,15 +832,49 @@ public class OWL2EcoreTransformer {
 
 	private List<EAnnotation> createEAnnotations(IResource rs) {
 		List<EAnnotation> annotations = new ArrayList<EAnnotation>();
+		addAnnotations(annotations, rs.getPropertyValues(
+				RDFS.PROPERTY_COMMENT, true), rs.getRdfsIsDefinedBy(), rs
+				.getPropertyValues(RDFS.PROPERTY_LABEL, true));
+
+		if (rs instanceof net.enilink.vocab.owl.Class) {
+			net.enilink.vocab.owl.Class owlClass = (net.enilink.vocab.owl.Class) rs;
+
+			// record disjointWith
+			for (net.enilink.vocab.owl.Class owlDisjointClass : sorted(owlClass
+					.getOwlDisjointWith())) {
+				if (owlDisjointClass != null) {
+					annotations.add(createAnnotation(OWL.PROPERTY_DISJOINTWITH,
+							owlDisjointClass.getURI()));
+				}
+			}
+		}
+
+		return merge(annotations);
+	}
 
+	/**
+	 * Creates the annotations of an enumeration member from its prefetched
+	 * values.
+	 */
+	private List<EAnnotation> createEAnnotations(Annotations values) {
+		List<EAnnotation> annotations = new ArrayList<EAnnotation>();
+		if (values != null) {
+			addAnnotations(annotations, values.comments, values.definedBy,
+					values.labels);
+		}
+		return merge(annotations);
+	}
+
+	private void addAnnotations(List<EAnnotation> annotations,
+			Iterable<?> comments, Iterable<?> definedBys, Iterable<?> labels) {
 		// create comments as annotations
-		for (Object value : rs.getPropertyValues(RDFS.PROPERTY_COMMENT, true)) {
+		for (Object value : sorted(comments)) {
 			annotations.add(createAnnotation(RDFS.PROPERTY_COMMENT,
 					((ILiteral) value).getLabel()));
 		}
 
 		// create isDefinedBy as annotations
-		for (Object definedBy : rs.getRdfsIsDefinedBy()) {
+		for (Object definedBy : sorted(definedBys)) {
 			if (definedBy instanceof IEntity) {
 				annotations.add(createAnnotation(RDFS.PROPERTY_ISDEFINEDBY,
 						((IEntity) definedBy).getURI()));
@@ -363,32 +882,19 @@ public class OWL2EcoreTransformer {
 		}
 
 		// create Label as annotations
-		for (Object value : rs.getPropertyValues(RDFS.PROPERTY_LABEL, true)) {
+		for (Object value : sorted(labels)) {
 			annotations.add(createAnnotation(RDFS.PROPERTY_LABEL,
 					((ILiteral) value).getLabel()));
 		}
-
-		if (rs instanceof net.enilink.vocab.owl.Class) {
-			net.enilink.vocab.owl.Class owlClass = (net.enilink.vocab.owl.Class) rs;
-
-			// record disjointWith
-			for (net.enilink.vocab.owl.Class owlDisjointClass : owlClass
-					.getOwlDisjointWith()) {
-				if (owlDisjointClass != null) {
-					annotations.add(createAnnotation(OWL.PROPERTY_DISJOINTWITH,
-							owlDisjointClass.getURI()));
-				}
-			}
-		}
-
-		return annotations;
 	}
 
 	private EEnum oneof2EEnum(IClass enumclass) {
 		EEnum eenum = (EEnum) owl2ecoreMap.get(enumclass);
 
 		if (eenum == null) {
-			List<Object> memberList = enumclass.getOwlOneOf();
+			boolean prefetched = prefetchEnumerations(enumclass);
+			List<Object> memberList = prefetched ? enumerations
+					.get(enumclass) : enumclass.getOwlOneOf();
 
 			if (memberList != null && !memberList.isEmpty()) {
 				eenum = EcoreFactory.eINSTANCE.createEEnum();
@@ -396,6 +902,8 @@ public class OWL2EcoreTransformer {
 				eenum.getEAnnotations().addAll(createEAnnotations(enumclass));
 
 				// create enumliterals from enumclass members
+				List<EEnumLiteral> eliterals = new ArrayList<EEnumLiteral>(
+						memberList.size());
 				int intValue = 0;
 				for (Iterator<Object> it = memberList.iterator(); it.hasNext();) {
 					Object object = it.next();
@@ -403,16 +911,25 @@ public class OWL2EcoreTransformer {
 					// create EEnumLiteral
 					EEnumLiteral eliteral = EcoreFactory.eINSTANCE
 							.createEEnumLiteral();
-					if (object instanceof IResource) {
+					if (prefetched
+							&& !(object instanceof net.enilink.vocab.owl.Class)) {
+						// classes are also annotated with disjointWith
+						eliteral.getEAnnotations().addAll(
+								createEAnnotations(memberAnnotations
+										.get(object)));
+					} else if (object instanceof IResource) {
 						eliteral.getEAnnotations().addAll(
 								createEAnnotations((IResource) object));
 					}
 
 					eliteral.setName(getName(object));
 					eliteral.setValue(intValue);
-					eenum.getELiterals().add(eliteral);
+					eliterals.add(eliteral);
 					intValue++;
 				}
+				// literals are new objects, no need to check for duplicates
+				((InternalEList<EEnumLiteral>) eenum.getELiterals())
+						.addAllUnique(eliterals);
 			}
 		}
 
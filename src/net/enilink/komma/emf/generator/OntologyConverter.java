@@ -28,21 +28,42 @@
  */
 package net.enilink.komma.emf.generator;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.Writer;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.GnuParser;
@@ -54,7 +75,6 @@ import org.eclipse.emf.ecore.EPackage;
 import org.eclipse.emf.ecore.EcorePackage;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.ResourceSet;
-import org.eclipse.emf.ecore.resource.URIConverter;
 import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
 import org.eclipse.emf.ecore.xmi.impl.EcoreResourceFactoryImpl;
 import org.openrdf.model.Namespace;
@@ -67,7 +87,8 @@ import org.openrdf.result.Result;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFParseException;
-import org.openrdf.rio.rdfxml.RDFXMLWriter;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.Rio;
 import org.openrdf.sail.memory.MemoryStore;
 import org.openrdf.store.StoreException;
 import org.slf4j.Logger;
@@ -100,7 +121,8 @@ public class OntologyConverter {
 				"directory where the ecore files will be saved");
 		jar.setArgName("jar file");
 		Option file = new Option("r", "rdf", true,
-				"filename where the rdf ontology will be saved");
+				"filename where the rdf ontology will be saved, "
+						+ "a .gz, .bz2 or .zip extension compresses the file");
 		file.setArgName("RDF file");
 		Option prefix = new Option("p", "prefix", true,
 				"prefix the property names with namespace prefix");
@@ -108,17 +130,61 @@ public class OntologyConverter {
 		Option baseClass = new Option("e", "extends", true,
 				"super class that all concepts should extend");
 		baseClass.setArgName("full class name");
+		Option format = new Option("f", "format", true,
+				"format of the rdf ontology: rdfxml, ntriples, turtle or binary");
+		format.setArgName("format");
+		Option cache = new Option("c", "cache", true,
+				"directory where intermediate results are cached");
+		cache.setArgName("dir");
 		options.addOption(baseClass);
 		options.addOption(prefix);
 		options.addOption("h", "help", false, "print this message");
 		options.addOption(pkg);
 		options.addOption(jar);
 		options.addOption(file);
+		options.addOption(format);
+		options.addOption("s", "scope", false,
+				"only normalize the bound namespaces and their dependencies");
+		options.addOption(cache);
+		options.addOption("o", "offline", false,
+				"only use cached copies of remote RDF sources");
+		options.addOption("z", "zip", false,
+				"compress the generated ecore files with gzip");
+		options.addOption("a", "merge-annotations", false,
+				"merge ecore annotations with the same source into one "
+						+ "annotation, its values are stored in the details "
+						+ "value, value1, value2 and so on");
+		options.addOption("m", "multi-file", false,
+				"write one rdf file per bound namespace");
+		options.addOption("x", "compact", false,
+				"create the ecore models with the compact graph engine");
+		Option jobs = new Option("j", "jobs", true,
+				"run all conversions that are listed in the manifest file");
+		jobs.setArgName("manifest");
+		options.addOption(jobs);
+		Option threads = new Option("t", "threads", true,
+				"number of conversions that are run in parallel by -j");
+		threads.setArgName("count");
+		options.addOption(threads);
+		Option slow = new Option("l", "log-slow", true,
+				"log the conversion phases and elements that take longer "
+						+ "than the given time");
+		slow.setArgName("ms");
+		options.addOption(slow);
+		Option inference = new Option("i", "inference", true,
+				"materialize inferences after loading: none, light or rdfs");
+		inference.setArgName("rules");
+		options.addOption(inference);
+		Option shardSize = new Option("n", "shard-size", true,
+				"split ecore packages into files with at most this number "
+						+ "of classifiers");
+		shardSize.setArgName("classifiers");
+		options.addOption(shardSize);
 	}
 
 	public static void main(String[] args) throws Exception {
 		try {
-			CommandLine line = new GnuParser().parse(options, args);
+			CommandLine line = parseArguments(args);
 			if (line.hasOption('h')) {
 				HelpFormatter formatter = new HelpFormatter();
 				String cmdLineSyntax = "codegen [options] [ontology | jar]...";
@@ -126,34 +192,29 @@ public class OntologyConverter {
 				formatter.printHelp(cmdLineSyntax, header, options, "");
 				return;
 			}
-			if (!line.hasOption('b'))
-				throw new ParseException("Required bind option missing");
-			if (!line.hasOption('d') && !line.hasOption('r'))
-				throw new ParseException("Required jar or rdf option missing");
-			if (line.hasOption('d') && line.hasOption('r'))
-				throw new ParseException(
-						"Only one directory or rdf option can be present");
-			OntologyConverter converter = new OntologyConverter();
-			String prefix = line.getOptionValue('p');
-			converter.setPropertyNamesPrefix(prefix);
-			if (line.hasOption('e')) {
-				converter.setBaseClasses(line.getOptionValues('e'));
-			}
-			findJars(line.getArgs(), 0, converter);
-			findECores(line.getArgs(), 0, converter);
-			findRdfSources(line.getArgs(), 0, converter);
-			for (String value : line.getOptionValues('b')) {
-				String[] split = value.split("=", 2);
-				if (split.length != 2) {
-					throw new ParseException("Invalid bind option: " + value);
+			if (line.hasOption('j')) {
+				int threads = Runtime.getRuntime().availableProcessors();
+				if (line.hasOption('t')) {
+					try {
+						threads = Integer.parseInt(line.getOptionValue('t'));
+					} catch (NumberFormatException e) {
+						throw new ParseException("Invalid number of threads: "
+								+ line.getOptionValue('t'));
+					}
 				}
-				converter.bindPackageToNamespace(split[0], split[1]);
+				ConversionBatch batch = ConversionBatch.read(new File(line
+						.getOptionValue('j')));
+				if (!batch.run(threads)) {
+					System.exit(1);
+				}
+				return;
 			}
-			converter.init();
-			if (line.hasOption('d')) {
-				converter.createECore(new File(line.getOptionValue('d')));
-			} else {
-				converter.createOntology(new File(line.getOptionValue('r')));
+			OntologyConverter converter = createConverter(line);
+			try {
+				converter.init();
+				converter.convert(line);
+			} finally {
+				converter.shutDown();
 			}
 			return;
 		} catch (ParseException exp) {
@@ -162,6 +223,123 @@ public class OntologyConverter {
 		}
 	}
 
+	static CommandLine parseArguments(String[] args) throws ParseException {
+		return new GnuParser().parse(options, args);
+	}
+
+	/**
+	 * Creates a converter that is configured by the given command line. The
+	 * converter is not initialized yet.
+	 */
+	static OntologyConverter createConverter(CommandLine line)
+			throws ParseException, MalformedURLException {
+		if (!line.hasOption('b'))
+			throw new ParseException("Required bind option missing");
+		if (!line.hasOption('d') && !line.hasOption('r'))
+			throw new ParseException("Required jar or rdf option missing");
+		if (line.hasOption('d') && line.hasOption('r'))
+			throw new ParseException(
+					"Only one directory or rdf option can be present");
+		OntologyConverter converter = new OntologyConverter();
+		String prefix = line.getOptionValue('p');
+		converter.setPropertyNamesPrefix(prefix);
+		if (line.hasOption('e')) {
+			converter.setBaseClasses(line.getOptionValues('e'));
+		}
+		converter.setScopedNormalization(line.hasOption('s'));
+		if (line.hasOption('c')) {
+			converter.setCacheDirectory(new File(line.getOptionValue('c')));
+		}
+		converter.setOffline(line.hasOption('o'));
+		converter.setCompressEcore(line.hasOption('z'));
+		converter.setMergeAnnotations(line.hasOption('a'));
+		converter.setSplitOntology(line.hasOption('m'));
+		converter.setCompactEngine(line.hasOption('x'));
+		if (line.hasOption('l')) {
+			try {
+				converter.setMonitor(new LoggingConversionMonitor(Long
+						.parseLong(line.getOptionValue('l'))));
+			} catch (NumberFormatException e) {
+				throw new ParseException("Invalid time: "
+						+ line.getOptionValue('l'));
+			}
+		}
+		if (line.hasOption('n')) {
+			try {
+				converter.setShardSize(Integer.parseInt(line
+						.getOptionValue('n')));
+			} catch (NumberFormatException e) {
+				throw new ParseException("Invalid shard size: "
+						+ line.getOptionValue('n'));
+			}
+		}
+		if (line.hasOption('i')) {
+			try {
+				converter.setInference(Inference.forName(line
+						.getOptionValue('i')));
+			} catch (IllegalArgumentException e) {
+				throw new ParseException(e.getMessage());
+			}
+		}
+		if (line.hasOption('f')) {
+			try {
+				converter.setOntologyFormat(RdfFormats.forName(line
+						.getOptionValue('f')));
+			} catch (IllegalArgumentException e) {
+				throw new ParseException(e.getMessage());
+			}
+		}
+		findJars(line.getArgs(), 0, converter);
+		findECores(line.getArgs(), 0, converter);
+		findRdfSources(line.getArgs(), 0, converter);
+		for (String value : line.getOptionValues('b')) {
+			String[] split = value.split("=", 2);
+			if (split.length != 2) {
+				throw new ParseException("Invalid bind option: " + value);
+			}
+			converter.bindPackageToNamespace(split[0], split[1]);
+		}
+		return converter;
+	}
+
+	/**
+	 * Returns the file or directory that is written by the conversion of the
+	 * given command line.
+	 */
+	static File getOutput(CommandLine line) {
+		return new File(line.hasOption('d') ? line.getOptionValue('d') : line
+				.getOptionValue('r'));
+	}
+
+	/**
+	 * Returns all files or directories that are written by this converter for
+	 * the given command line. A split ontology is written to one file per
+	 * bound package instead of the output file itself.
+	 */
+	List<File> getOutputs(CommandLine line) {
+		File output = getOutput(line);
+		if (line.hasOption('d') || !splitOntology) {
+			return Collections.singletonList(output);
+		}
+		List<File> outputs = new ArrayList<File>();
+		for (String pkg : new TreeSet<String>(packages.values())) {
+			outputs.add(partitionFile(output, pkg));
+		}
+		return outputs;
+	}
+
+	/**
+	 * Runs the conversion of the given command line with this initialized
+	 * converter.
+	 */
+	void convert(CommandLine line) throws Exception {
+		if (line.hasOption('d')) {
+			createECore(getOutput(line));
+		} else {
+			createOntology(getOutput(line));
+		}
+	}
+
 	private static void findRdfSources(String[] args, int offset,
 			OntologyConverter converter) throws MalformedURLException {
 		for (int i = offset; i < args.length; i++) {
@@ -211,6 +389,9 @@ public class OntologyConverter {
 		}
 	}
 
+	/** Maximum number of remote sources that are downloaded concurrently */
+	private static final int MAX_CONCURRENT_FETCHES = 8;
+
 	final Logger logger = LoggerFactory.getLogger(OntologyConverter.class);
 
 	private boolean importJarOntologies = true;
@@ -234,6 +415,37 @@ public class OntologyConverter {
 
 	private String[] baseClasses;
 
+	private boolean scopedNormalization;
+
+	private File cacheDirectory;
+
+	private MessageDigest inputDigest;
+
+	private SharedBase sharedBase;
+
+	private boolean offline;
+
+	private boolean compressEcore;
+
+	private boolean mergeAnnotations;
+
+	private boolean splitOntology;
+
+	private RDFFormat ontologyFormat;
+
+	private boolean compactEngine;
+
+	private ConversionMonitor monitor = ConversionMonitor.NONE;
+
+	private Inference inference = Inference.NONE;
+
+	private int shardSize;
+
+	/** remote source -&gt; local copy */
+	private Map<URL, File> fetchedSources = Collections.emptyMap();
+
+	private String inputFingerprint;
+
 	/**
 	 * If the ontologies bundled with the included jars should be imported.
 	 * 
@@ -285,6 +497,250 @@ public class OntologyConverter {
 		this.baseClasses = strings;
 	}
 
+	/**
+	 * If only the bound namespaces and the ontologies they depend on should
+	 * be normalized before creating the ECore packages.
+	 * 
+	 * @return <code>true</code> if the normalization is scoped.
+	 */
+	public boolean isScopedNormalization() {
+		return scopedNormalization;
+	}
+
+	/**
+	 * If only the bound namespaces and the ontologies they depend on should
+	 * be normalized before creating the ECore packages.
+	 * 
+	 * @param scopedNormalization
+	 *            <code>true</code> if the normalization should be scoped.
+	 */
+	public void setScopedNormalization(boolean scopedNormalization) {
+		this.scopedNormalization = scopedNormalization;
+	}
+
+	/**
+	 * Directory where intermediate results are cached or <code>null</code>
+	 * if nothing is cached.
+	 */
+	public File getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	/**
+	 * Directory where intermediate results are cached between runs. Cached
+	 * results are keyed by the fingerprint of the loaded inputs.
+	 * 
+	 * @param cacheDirectory
+	 *            the cache directory or <code>null</code> to disable caching
+	 */
+	public void setCacheDirectory(File cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * If remote RDF sources should only be read from the cache directory.
+	 * 
+	 * @return <code>true</code> if no remote server is contacted.
+	 */
+	public boolean isOffline() {
+		return offline;
+	}
+
+	/**
+	 * If remote RDF sources should only be read from the cache directory.
+	 * 
+	 * @param offline
+	 *            <code>true</code> if no remote server should be contacted.
+	 * @see #setCacheDirectory(File)
+	 */
+	public void setOffline(boolean offline) {
+		this.offline = offline;
+	}
+
+	/**
+	 * If the generated ECore files should be compressed with GZip.
+	 * 
+	 * @return <code>true</code> if <code>.ecore.gz</code> files are created.
+	 */
+	public boolean isCompressEcore() {
+		return compressEcore;
+	}
+
+	/**
+	 * If the generated ECore files should be compressed with GZip.
+	 * 
+	 * @param compressEcore
+	 *            <code>true</code> if <code>.ecore.gz</code> files should be
+	 *            created.
+	 */
+	public void setCompressEcore(boolean compressEcore) {
+		this.compressEcore = compressEcore;
+	}
+
+	/**
+	 * If annotations with the same source should be merged into one
+	 * annotation per ECore element.
+	 * 
+	 * @return <code>true</code> if annotations are merged.
+	 */
+	public boolean isMergeAnnotations() {
+		return mergeAnnotations;
+	}
+
+	/**
+	 * If annotations with the same source should be merged into one
+	 * annotation per ECore element. The values of the merged annotations are
+	 * stored in the details <code>value</code>, <code>value1</code>,
+	 * <code>value2</code> and so on, hence consumers that only read the
+	 * detail <code>value</code> see the first value only.
+	 * 
+	 * @param mergeAnnotations
+	 *            <code>true</code> if annotations should be merged.
+	 * @see OWL2EcoreTransformer#setMergeAnnotations(boolean)
+	 */
+	public void setMergeAnnotations(boolean mergeAnnotations) {
+		this.mergeAnnotations = mergeAnnotations;
+	}
+
+	/**
+	 * If one RDF file per bound namespace should be written.
+	 * 
+	 * @return <code>true</code> if the ontology is split by namespace.
+	 */
+	public boolean isSplitOntology() {
+		return splitOntology;
+	}
+
+	/**
+	 * If one RDF file per bound namespace should be written instead of a
+	 * single file. The files are written concurrently.
+	 * 
+	 * @param splitOntology
+	 *            <code>true</code> if the ontology should be split by
+	 *            namespace.
+	 */
+	public void setSplitOntology(boolean splitOntology) {
+		this.splitOntology = splitOntology;
+	}
+
+	/**
+	 * The format of the generated RDF files.
+	 * 
+	 * @return the format or <code>null</code> if it is determined by the file
+	 *         name.
+	 */
+	public RDFFormat getOntologyFormat() {
+		return ontologyFormat;
+	}
+
+	/**
+	 * The format of the generated RDF files. If no format is set then the
+	 * format is determined by the extension of the output file with RDF/XML as
+	 * fallback. N-Triples and the binary format of Sesame are much faster to
+	 * write and to read than RDF/XML.
+	 * 
+	 * @param ontologyFormat
+	 *            the format or <code>null</code>
+	 */
+	public void setOntologyFormat(RDFFormat ontologyFormat) {
+		this.ontologyFormat = ontologyFormat;
+	}
+
+	/**
+	 * If the ECore models are created with the compact graph engine instead
+	 * of KOMMA entities.
+	 * 
+	 * @return <code>true</code> if the compact engine is used.
+	 */
+	public boolean isCompactEngine() {
+		return compactEngine;
+	}
+
+	/**
+	 * If the ECore models are created with the compact graph engine instead
+	 * of KOMMA entities. Both engines create the same models.
+	 * 
+	 * @param compactEngine
+	 *            <code>true</code> if the compact engine should be used.
+	 * @see EcoreGenerator#setCompactEngine(boolean)
+	 */
+	public void setCompactEngine(boolean compactEngine) {
+		this.compactEngine = compactEngine;
+	}
+
+	/**
+	 * The monitor that is notified about the phases of the conversion.
+	 */
+	public ConversionMonitor getMonitor() {
+		return monitor;
+	}
+
+	/**
+	 * The monitor that is notified about the phases of the conversion and
+	 * the time spent for each transformed element and saved file.
+	 * 
+	 * @param monitor
+	 *            the monitor or <code>null</code> to disable monitoring
+	 */
+	public void setMonitor(ConversionMonitor monitor) {
+		this.monitor = monitor != null ? monitor : ConversionMonitor.NONE;
+	}
+
+	/**
+	 * The inferences that are materialized after loading the RDF sources.
+	 */
+	public Inference getInference() {
+		return inference;
+	}
+
+	/**
+	 * The inferences that are materialized after loading the RDF sources. If
+	 * a cache directory is set then the inferred statements are cached by
+	 * the fingerprint of the inputs and loaded by later runs instead of
+	 * computing them again.
+	 * 
+	 * @param inference
+	 *            the inference or <code>null</code> to disable inference
+	 */
+	public void setInference(Inference inference) {
+		this.inference = inference != null ? inference : Inference.NONE;
+	}
+
+	/**
+	 * The maximum number of classifiers per ECore file or <code>0</code> if
+	 * packages are not split.
+	 */
+	public int getShardSize() {
+		return shardSize;
+	}
+
+	/**
+	 * The maximum number of classifiers per ECore file. Larger packages are
+	 * split into several packages that are saved to the files
+	 * <code>package.ecore</code>, <code>package-1.ecore</code> and so on.
+	 * The files refer to each other with cross-document references, hence
+	 * consumers only need to load the files of the required classifiers.
+	 * 
+	 * @param shardSize
+	 *            the maximum number of classifiers or <code>0</code> to save
+	 *            each package to a single file
+	 * @see EcoreSharding
+	 */
+	public void setShardSize(int shardSize) {
+		if (shardSize < 0) {
+			throw new IllegalArgumentException("Invalid shard size: "
+					+ shardSize);
+		}
+		this.shardSize = shardSize;
+	}
+
+	/**
+	 * Returns the jars that are included in the class-path.
+	 */
+	List<URL> getJars() {
+		return Collections.unmodifiableList(jars);
+	}
+
 	/**
 	 * Add a jar of classes to include in the class-path.
 	 * 
@@ -332,20 +788,292 @@ public class OntologyConverter {
 		packages.put(namespace, pkgName);
 	}
 
+	/**
+	 * The shared base repository or <code>null</code> if this converter uses
+	 * its own repository.
+	 */
+	public SharedBase getSharedBase() {
+		return sharedBase;
+	}
+
+	/**
+	 * Use a shared base repository for this conversion. The jar ontologies
+	 * are not imported again, the RDF sources and all results of the
+	 * conversion are kept in a private overlay that is discarded together
+	 * with this converter.
+	 * 
+	 * @param sharedBase
+	 *            the shared base or <code>null</code>
+	 * @see #createSharedBase()
+	 */
+	public void setSharedBase(SharedBase sharedBase) {
+		this.sharedBase = sharedBase;
+	}
+
+	/**
+	 * Loads the ontologies of the included jars and the RDF sources of this
+	 * converter into a new repository that can be shared by other converters.
+	 * 
+	 * @return the shared base repository
+	 * @throws Exception
+	 * @see #setSharedBase(SharedBase)
+	 */
+	public SharedBase createSharedBase() throws Exception {
+		inputDigest = MessageDigest.getInstance("SHA-1");
+		URLClassLoader baseCl = createClassLoader(jars);
+		ClassLoader previousCl = setContextClassLoader(baseCl);
+		File tmpDir = null;
+		try {
+			tmpDir = fetchRemoteSources();
+			MemoryStore store = new MemoryStore();
+			Repository base = new SailRepository(store);
+			base.initialize();
+			if (importJarOntologies) {
+				loadJarOntologies(base, baseCl);
+			}
+			for (URL url : rdfSources) {
+				loadOntology(base, url);
+			}
+			return new SharedBase(store, toHex(inputDigest.digest()));
+		} finally {
+			setContextClassLoader(previousCl);
+			deleteFetchedSources(tmpDir);
+		}
+	}
+
 	/**
 	 * Create the local repository and load the RDF files.
 	 * 
 	 * @throws Exception
 	 */
 	public void init() throws Exception {
+		inputDigest = MessageDigest.getInstance("SHA-1");
 		cl = createClassLoader(jars);
-		Thread.currentThread().setContextClassLoader(cl);
-		repository = createRepository(cl);
+		// the classes of the jars define the concepts of the managers
+		digestJars();
+		ClassLoader previousCl = setContextClassLoader(cl);
+		File tmpDir = null;
+		try {
+			tmpDir = fetchRemoteSources();
+			repository = createRepository(cl);
+			for (URL url : rdfSources) {
+				loadOntology(repository, url);
+			}
+		} finally {
+			setContextClassLoader(previousCl);
+			deleteFetchedSources(tmpDir);
+		}
+		if (inference != Inference.NONE) {
+			// normalized results depend on the materialized inferences
+			inputDigest.update((inference.name() + Materializer.VERSION)
+					.getBytes("UTF-8"));
+		}
+		inputFingerprint = toHex(inputDigest.digest());
+		if (inference != Inference.NONE) {
+			materialize();
+		}
+	}
+
+	/**
+	 * Releases the repository of this converter. The converter has to be
+	 * initialized again before it can be used.
+	 * 
+	 * @throws StoreException
+	 */
+	public void shutDown() throws StoreException {
+		if (repository != null) {
+			repository.shutDown();
+			repository = null;
+		}
+	}
+
+	/**
+	 * Adds the contents of all jars to the input digest. Jar files are
+	 * digested as a whole, the files of class directories in the order of
+	 * their paths.
+	 */
+	private void digestJars() throws IOException {
+		for (URL jar : jars) {
+			inputDigest.update(jar.toExternalForm().getBytes("UTF-8"));
+			if (!"file".equals(jar.getProtocol())) {
+				digest(jar.openStream());
+				continue;
+			}
+			File file;
+			try {
+				file = new File(jar.toURI());
+			} catch (URISyntaxException e) {
+				file = new File(jar.getPath());
+			}
+			digest(file);
+		}
+	}
+
+	private void digest(File file) throws IOException {
+		if (file.isDirectory()) {
+			String[] names = file.list();
+			if (names != null) {
+				Arrays.sort(names);
+				for (String name : names) {
+					inputDigest.update(name.getBytes("UTF-8"));
+					digest(new File(file, name));
+				}
+			}
+		} else if (file.exists()) {
+			digest(new FileInputStream(file));
+		}
+	}
+
+	private void digest(InputStream in) throws IOException {
+		try {
+			byte[] buffer = new byte[65536];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				inputDigest.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Adds the inferred statements to the repository. The inferred
+	 * statements are read from or saved to the cache directory if it is set.
+	 */
+	private void materialize() throws Exception {
+		File cacheFile = null;
+		if (cacheDirectory != null) {
+			cacheFile = new File(new File(cacheDirectory, "inferred"),
+					inputFingerprint + ".trig");
+		}
+		RepositoryConnection conn = repository.getConnection();
+		try {
+			if (cacheFile != null && cacheFile.exists()) {
+				logger.info("Using inferred statements from {}", cacheFile);
+				InputStream in = new BufferedInputStream(new FileInputStream(
+						cacheFile), 65536);
+				try {
+					conn.add(in, "", RDFFormat.TRIG);
+				} finally {
+					in.close();
+				}
+				return;
+			}
+			List<Statement> inferred = new Materializer(inference)
+					.infer(conn);
+			logger.info("Inferred {} statements", inferred.size());
+			for (Statement stmt : inferred) {
+				conn.add(stmt);
+			}
+			if (cacheFile != null) {
+				saveInferred(cacheFile, inferred);
+			}
+		} finally {
+			conn.close();
+		}
+	}
+
+	private static void saveInferred(File file, List<Statement> inferred)
+			throws IOException, RDFHandlerException {
+		file.getParentFile().mkdirs();
+		// group the statements by context to keep the graphs of TriG small
+		List<Statement> sorted = new ArrayList<Statement>(inferred);
+		Collections.sort(sorted, new Comparator<Statement>() {
+			public int compare(Statement a, Statement b) {
+				return String.valueOf(a.getContext()).compareTo(
+						String.valueOf(b.getContext()));
+			}
+		});
+		// concurrent conversions of the same inputs may save the same file
+		File tmpFile = File.createTempFile("inferred", ".tmp", file
+				.getParentFile());
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(
+				tmpFile), 65536);
+		try {
+			RDFWriter writer = Rio.createWriter(RDFFormat.TRIG, out);
+			writer.startRDF();
+			for (Statement stmt : sorted) {
+				writer.handleStatement(stmt);
+			}
+			writer.endRDF();
+		} finally {
+			out.close();
+		}
+		if (!tmpFile.renameTo(file)) {
+			tmpFile.delete();
+		}
+	}
+
+	/**
+	 * Concurrently downloads all remote RDF sources into the cache directory
+	 * or into a temporary directory if no cache directory is set.
+	 * 
+	 * @return the temporary directory that has to be deleted after the
+	 *         sources are loaded or <code>null</code>
+	 */
+	private File fetchRemoteSources() throws IOException {
+		fetchedSources = Collections.emptyMap();
+		List<URL> remoteSources = new ArrayList<URL>();
 		for (URL url : rdfSources) {
-			loadOntology(repository, url);
+			if (RemoteSourceCache.isRemote(url)) {
+				remoteSources.add(url);
+			}
+		}
+		if (remoteSources.isEmpty()) {
+			return null;
+		}
+
+		File tmpDir = null;
+		File dir;
+		if (cacheDirectory != null) {
+			dir = new File(cacheDirectory, "remote");
+		} else if (offline) {
+			throw new IllegalArgumentException(
+					"Offline mode requires a cache directory");
+		} else {
+			tmpDir = File.createTempFile("sources", "");
+			tmpDir.delete();
+			dir = tmpDir;
+		}
+		RemoteSourceCache cache = new RemoteSourceCache(dir);
+		cache.setOffline(offline);
+		try {
+			fetchedSources = cache.fetchAll(remoteSources,
+					MAX_CONCURRENT_FETCHES);
+		} catch (IOException e) {
+			deleteFetchedSources(tmpDir);
+			throw e;
+		}
+		return tmpDir;
+	}
+
+	private void deleteFetchedSources(File tmpDir) {
+		fetchedSources = Collections.emptyMap();
+		if (tmpDir != null) {
+			File[] files = tmpDir.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			tmpDir.delete();
 		}
 	}
 
+	/**
+	 * Sets the context class loader of the current thread. The class loader
+	 * is only changed while this converter is working to not influence other
+	 * conversions that run concurrently within the same JVM.
+	 * 
+	 * @return the previous context class loader
+	 */
+	private static ClassLoader setContextClassLoader(ClassLoader cl) {
+		Thread thread = Thread.currentThread();
+		ClassLoader previous = thread.getContextClassLoader();
+		thread.setContextClassLoader(cl);
+		return previous;
+	}
+
 	/**
 	 * Generate an OWL ontology from the JavaBeans in the included jars.
 	 * 
@@ -355,10 +1083,15 @@ public class OntologyConverter {
 	 * @see {@link #addEcore(URL)}
 	 */
 	public void createOntology(File rdfOutputFile) throws Exception {
-		DecoratingSesameManagerFactory factory = new DecoratingSesameManagerFactory(
-				KommaUtil.getCoreModule(), repository);
-		final ISesameManager manager = factory.createKommaManager();
-		createOntology(manager, rdfOutputFile);
+		ClassLoader previousCl = setContextClassLoader(cl);
+		try {
+			DecoratingSesameManagerFactory factory = new DecoratingSesameManagerFactory(
+					KommaUtil.getCoreModule(), repository);
+			final ISesameManager manager = factory.createKommaManager();
+			createOntology(manager, rdfOutputFile);
+		} finally {
+			setContextClassLoader(previousCl);
+		}
 	}
 
 	/**
@@ -371,7 +1104,12 @@ public class OntologyConverter {
 	 * @see {@link #addRdfSource(URL)}
 	 */
 	public void createECore(File directory) throws Exception {
-		createECorePackages(repository, cl, directory);
+		ClassLoader previousCl = setContextClassLoader(cl);
+		try {
+			createECorePackages(repository, cl, directory);
+		} finally {
+			setContextClassLoader(previousCl);
+		}
 	}
 
 	protected Repository createRepository() throws StoreException {
@@ -401,7 +1139,16 @@ public class OntologyConverter {
 
 	private Repository createRepository(ClassLoader cl) throws StoreException,
 			IOException, RDFParseException {
-		Repository repository = createRepository();
+		Repository repository;
+		if (sharedBase != null) {
+			// the shared base already contains the imported ontologies
+			repository = new SailRepository(new OverlaySail(sharedBase
+					.getSail(), new MemoryStore()));
+			repository.initialize();
+			inputDigest.update(sharedBase.getFingerprint().getBytes("UTF-8"));
+		} else {
+			repository = createRepository();
+		}
 		RepositoryConnection conn = repository.getConnection();
 		try {
 			for (Map.Entry<String, String> e : namespaces.entrySet()) {
@@ -410,15 +1157,21 @@ public class OntologyConverter {
 		} finally {
 			conn.close();
 		}
-		if (importJarOntologies) {
-			for (String owl : loadOntologyList(cl)) {
-				URL url = cl.getResource(owl);
-				loadOntology(repository, url);
-			}
+		if (importJarOntologies && sharedBase == null) {
+			loadJarOntologies(repository, cl);
 		}
 		return repository;
 	}
 
+	private void loadJarOntologies(Repository repository, ClassLoader cl)
+			throws StoreException, IOException, RDFParseException {
+		// load in a stable order to get a reproducible input fingerprint
+		for (String owl : new TreeSet<String>(loadOntologyList(cl))) {
+			URL url = cl.getResource(owl);
+			loadOntology(repository, url);
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	private Collection<String> loadOntologyList(ClassLoader cl)
 			throws IOException {
@@ -436,39 +1189,181 @@ public class OntologyConverter {
 	private void loadOntology(Repository repository, URL url)
 			throws StoreException, IOException, RDFParseException {
 		String filename = url.toString();
-		RDFFormat format = formatForFileName(filename);
+		inputDigest.update(filename.getBytes("UTF-8"));
 		RepositoryConnection conn = repository.getConnection();
 		ValueFactory vf = conn.getValueFactory();
+		org.openrdf.model.URI context = vf.createURI(url.toExternalForm());
+		// remote sources are read from their local copies
+		File fetched = fetchedSources.get(url);
+		InputStream in = fetched != null ? new FileInputStream(fetched) : url
+				.openStream();
+		CountingInputStream counter = null;
+		long start = 0;
+		if (monitor.isEnabled()) {
+			start = System.nanoTime();
+			in = counter = new CountingInputStream(in);
+		}
+		in = new DigestInputStream(in, inputDigest);
 		try {
-			conn.add(url, "", format, vf.createURI(url.toExternalForm()));
+			if (Compression.isZip(filename)) {
+				// load all entries of the archive into the same context
+				ZipInputStream zipIn = new ZipInputStream(in);
+				ZipEntry entry;
+				while ((entry = zipIn.getNextEntry()) != null) {
+					if (entry.isDirectory() || Compression.isZip(entry.getName())) {
+						logger.debug("Skipping {} in {}", entry.getName(), url);
+						continue;
+					}
+					// entries may be compressed themselves, e.g. a.ttl.gz
+					InputStream entryIn = new BufferedInputStream(Compression
+							.decompress(entry.getName(), Compression
+									.uncloseable(zipIn)), 65536);
+					// entries without a known extension are inspected
+					RDFFormat format = guessFormat(entry.getName(), entryIn);
+					if (format == null) {
+						logger.debug("Skipping {} in {}", entry.getName(), url);
+						continue;
+					}
+					conn.add(entryIn, "", format, context);
+				}
+			} else {
+				InputStream content = new BufferedInputStream(Compression
+						.decompress(filename, in), 65536);
+				conn.add(content, "", detectFormat(filename, content), context);
+			}
+			if (counter != null) {
+				monitor.sourceLoaded(url, count(conn, context), counter
+						.getCount(), System.nanoTime() - start);
+			}
 		} finally {
+			in.close();
 			conn.close();
 		}
 	}
 
-	private RDFFormat formatForFileName(String filename) {
+	private static long count(RepositoryConnection conn,
+			org.openrdf.model.Resource context) throws StoreException {
+		Result<Statement> stmts = conn.match(
+				(org.openrdf.model.Resource) null, null, null, false, context);
+		try {
+			long count = 0;
+			while (stmts.hasNext()) {
+				stmts.next();
+				count++;
+			}
+			return count;
+		} finally {
+			stmts.close();
+		}
+	}
+
+	/**
+	 * Counts the bytes that are read from a stream.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0) {
+				count += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes) {
+			hex.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Determines the format of an RDF document by its file name. The content
+	 * is inspected if the extension is unknown or ambiguous like
+	 * <code>.owl</code> which is used for RDF/XML as well as for Turtle.
+	 */
+	private RDFFormat detectFormat(String filename, InputStream in)
+			throws IOException {
+		RDFFormat format = guessFormat(filename, in);
+		if (format == null) {
+			throw new IllegalArgumentException("Unknow RDF format for "
+					+ filename);
+		}
+		return format;
+	}
+
+	/**
+	 * Returns the format of an RDF document like
+	 * {@link #detectFormat(String, InputStream)} or <code>null</code> if it
+	 * is not recognized.
+	 */
+	private RDFFormat guessFormat(String filename, InputStream in)
+			throws IOException {
+		String name = Compression.stripExtension(filename);
+		RDFFormat format = name.endsWith(".owl") ? null : RDFFormat
+				.forFileName(name);
+		if (format == null) {
+			format = RdfFormats.sniff(in);
+		}
+		if (format == null) {
+			format = findFormat(filename);
+		}
+		return format;
+	}
+
+	private RDFFormat findFormat(String filename) {
+		// use the name of the compressed content
+		filename = Compression.stripExtension(filename);
 		RDFFormat format = RDFFormat.forFileName(filename);
 		if (format != null)
 			return format;
 		if (filename.endsWith(".owl"))
 			return RDFFormat.RDFXML;
-		throw new IllegalArgumentException("Unknow RDF format for " + filename);
+		return null;
 	}
 
 	private void createOntology(IKommaManager manager, File output)
 			throws Exception {
+		// use conversion specific registries instead of the global ones
+		ResourceSet resourceSet = Ecore2OWLTransformer.createResourceSet();
 		if (!AbstractKommaPlugin.IS_ECLIPSE_RUNNING) {
 			URL ecoreUrl = getClass().getClassLoader().getResource(
 					"model/Ecore.ecore");
-			URIConverter.INSTANCE.getURIMap().put(
+			resourceSet.getURIConverter().getURIMap().put(
 					org.eclipse.emf.common.util.URI
 							.createURI(EcorePackage.eNS_URI),
 					org.eclipse.emf.common.util.URI.createURI(ecoreUrl.toURI()
 							.toString()));
 
-			EcorePackage.eINSTANCE.getEPackage();
-
-			EPackage.Registry.INSTANCE.put(
+			resourceSet.getPackageRegistry().put(
 					"platform:/plugin/org.eclipse.emf.ecore/model/Ecore.ecore",
 					EcorePackage.eINSTANCE);
 		}
@@ -479,45 +1374,167 @@ public class OntologyConverter {
 			manager.createNamed(ontologyUri, Ontology.class);
 		}
 
+		// load all files into a shared resource set before transforming them
+		// to load referenced metamodels only once
+		Ecore2OWLTransformer transformer = new Ecore2OWLTransformer(manager,
+				resourceSet);
+		transformer.setMonitor(monitor);
+		List<String> ecoreFiles = new ArrayList<String>();
 		for (URL ecore : ecores) {
-			new Ecore2OWLTransformer(manager)
-					.ecore2OWL(new File(ecore.toURI()).getAbsolutePath(),
-							Collections.<String, String> emptyMap());
+			ecoreFiles.add(new File(ecore.toURI()).getAbsolutePath());
 		}
-
-		if (output.getParentFile() != null) {
-			output.getParentFile().mkdirs();
+		List<Resource> resources = transformer.load(ecoreFiles);
+		// packages with the same namespace may use the same property names
+		transformer.planPropertyNames(resources);
+		for (Resource resource : resources) {
+			transformer.ecore2OWL(resource, Collections
+					.<String, String> emptyMap());
 		}
 
-		Writer out = new FileWriter(output);
-		RDFXMLWriter writer = new RDFXMLWriter(out);
+		Map<String, String> namespaces = new TreeMap<String, String>();
+		NamespacePartition partition = new NamespacePartition(packages
+				.keySet(), splitOntology);
+		List<Statement> all = null;
+		RepositoryConnection conn = repository.getConnection();
 		try {
-			writer.startRDF();
+			// write namespaces and statements in a reproducible order
+			for (Namespace namespace : conn.getNamespaces().asList()) {
+				namespaces.put(namespace.getPrefix(), namespace.getName());
+			}
+
+			// the imported ontologies are stored within their own contexts,
+			// hence the default context only contains the transformed models
+			Result<Statement> stmts = conn.match(
+					(org.openrdf.model.Resource) null, null, null, false,
+					(org.openrdf.model.Resource) null);
 			try {
+				if (packages.isEmpty()) {
+					// without bound namespaces the whole model is written
+					all = stmts.asList();
+				} else {
+					while (stmts.hasNext()) {
+						partition.add(stmts.next());
+					}
+				}
+			} finally {
+				stmts.close();
+			}
+		} finally {
+			conn.close();
+		}
 
-				RepositoryConnection conn = repository.getConnection();
+		if (all != null) {
+			writeOntology(output, namespaces, all);
+		} else if (splitOntology) {
+			createOntologies(output, namespaces, partition.getPartitions());
+		} else {
+			writeOntology(output, namespaces, partition.getStatements());
+		}
+	}
 
-				for (Namespace namespace : conn.getNamespaces().asList()) {
-					writer.handleNamespace(namespace.getPrefix(), namespace
-							.getName());
+	/**
+	 * Writes one file per bound namespace. The files are named after the
+	 * given output file with the package name of the namespace appended to
+	 * its base name, e.g. <code>model-foo.owl</code> for
+	 * <code>model.owl</code> and the package <code>foo</code>.
+	 */
+	private void createOntologies(File output,
+			final Map<String, String> namespaces,
+			Map<String, List<Statement>> partitions) throws Exception {
+		int threads = Math.min(Runtime.getRuntime().availableProcessors(),
+				partitions.size());
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+				threads));
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (Map.Entry<String, List<Statement>> partition : partitions
+					.entrySet()) {
+				if (partition.getValue().isEmpty()) {
+					continue;
 				}
-
-				Result<Statement> stmts = conn.match(
-						(org.openrdf.model.Resource) null, null, null, false,
-						(org.openrdf.model.Resource) null);
-				while (stmts.hasNext()) {
-					writer.handleStatement(stmts.next());
+				final File file = partitionFile(output, packages.get(partition
+						.getKey()));
+				final List<Statement> stmts = partition.getValue();
+				results.add(executor.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						writeOntology(file, namespaces, stmts);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
 				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private File partitionFile(File output, String pkg) {
+		String name = output.getName();
+		String baseName = Compression.stripExtension(name);
+		String compression = name.substring(baseName.length());
+		int dot = baseName.lastIndexOf('.');
+		if (dot < 0) {
+			dot = baseName.length();
+		}
+		return new File(output.getParentFile(), baseName.substring(0, dot)
+				+ "-" + pkg + baseName.substring(dot) + compression);
+	}
+
+	private void writeOntology(File output, Map<String, String> namespaces,
+			List<Statement> stmts) throws IOException,
+			RDFHandlerException {
+		if (output.getParentFile() != null) {
+			output.getParentFile().mkdirs();
+		}
 
-				conn.close();
-			} catch (StoreException e) {
-				e.printStackTrace();
+		RDFFormat format = ontologyFormat;
+		if (format == null) {
+			format = findFormat(output.getName());
+			if (format == null) {
+				format = RDFFormat.RDFXML;
 			}
+		}
 
-			// writer.printOntology(ontModel.getOntologyURI());
+		long start = monitor.isEnabled() ? System.nanoTime() : 0;
+		ChangeAwareFileOutputStream fileOut = new ChangeAwareFileOutputStream(
+				output);
+		boolean written = false;
+		OutputStream out = new BufferedOutputStream(Compression.compress(
+				output.getName(), fileOut), 65536);
+		try {
+			RDFWriter writer = Rio.createWriter(format, out);
+			writer.startRDF();
+			for (Map.Entry<String, String> namespace : namespaces.entrySet()) {
+				writer.handleNamespace(namespace.getKey(), namespace.getValue());
+			}
+			for (Statement stmt : CanonicalStatements.canonicalize(stmts)) {
+				writer.handleStatement(stmt);
+			}
 			writer.endRDF();
-		} catch (RDFHandlerException e) {
-			e.printStackTrace();
+			written = true;
+		} finally {
+			if (!written) {
+				// keep the previous output instead of a truncated file
+				fileOut.discard();
+			}
+			// also finishes the compressed stream
+			out.close();
+		}
+		if (monitor.isEnabled()) {
+			monitor.fileSaved(output, fileOut.isChanged(), System.nanoTime()
+					- start);
+		}
+		if (!fileOut.isChanged()) {
+			logger.info("Unchanged {}", output);
 		}
 	}
 
@@ -526,8 +1543,12 @@ public class OntologyConverter {
 		Map<String, EPackage> ePackages = new HashMap<String, EPackage>();
 		OWL2EcoreTransformer transformer = new OWL2EcoreTransformer(ePackages,
 				packages);
+		transformer.setMergeAnnotations(mergeAnnotations);
+		transformer.setMonitor(monitor);
 
 		generateEcore(repository, cl, transformer);
+		// fails if the transformation was not completed
+		ePackages = transformer.getEPackages();
 		if (ePackages.isEmpty())
 			throw new IllegalArgumentException(
 					"No classes found - Try a different namespace.");
@@ -547,14 +1568,53 @@ public class OntologyConverter {
 			gen.setBaseClasses(base.toArray(new Class<?>[base.size()]));
 		}
 		gen.setRepository(repository);
+		gen.setScopedNormalization(scopedNormalization);
+		gen.setCompactEngine(compactEngine);
+		gen.setMonitor(monitor);
+		if (cacheDirectory != null) {
+			gen.setNormalizationCache(new File(cacheDirectory, "normalized"));
+			gen.setInputFingerprint(inputFingerprint);
+		}
 
 		for (Map.Entry<String, String> e : packages.entrySet()) {
 			gen.bindPackageToNamespace(e.getValue(), e.getKey());
 		}
 		gen.init();
+		if (gen.getRepository() != this.repository) {
+			// continue with the normalized repository, the loaded inputs are
+			// not required anymore
+			this.repository.shutDown();
+			this.repository = gen.getRepository();
+		}
 		gen.exportECore(transformer);
 	}
 
+	/**
+	 * Deletes the shard files of a package that are left from an earlier
+	 * conversion with more shards, e.g. <code>foo-3.ecore</code> if the
+	 * package <code>foo</code> now only has three shards.
+	 */
+	private void deleteShards(File output, String packageName, int shards) {
+		File[] files = output.listFiles();
+		if (files == null) {
+			return;
+		}
+		Pattern shardName = Pattern.compile(Pattern.quote(packageName)
+				+ "-(\\d+)\\.ecore(" + Pattern.quote(Compression.GZIP)
+				+ ")?");
+		for (File file : files) {
+			Matcher matcher = shardName.matcher(file.getName());
+			if (matcher.matches()
+					&& Integer.parseInt(matcher.group(1)) >= shards) {
+				if (file.delete()) {
+					logger.info("Deleted stale shard {}", file);
+				} else {
+					logger.warn("Could not delete stale shard {}", file);
+				}
+			}
+		}
+	}
+
 	private void saveEcore(File output, Map<String, EPackage> ePackages)
 			throws IOException {
 		// save ecore model
@@ -567,29 +1627,65 @@ public class OntologyConverter {
 						new EcoreResourceFactoryImpl());
 
 		List<Resource> resources = new ArrayList<Resource>();
-		for (Map.Entry<String, EPackage> entry : ePackages.entrySet()) {
+		// create the resources in a stable order
+		for (Map.Entry<String, EPackage> entry : new TreeMap<String, EPackage>(
+				ePackages).entrySet()) {
 			String packageName = packages.get(entry.getKey());
 			// if (packageName == null || packageName.trim().length() == 0) {
 			// System.out.println("no file for package: " + entry.getKey());
 			// continue;
 			// }
 
-			File outputEcoreFile = new File(output, packageName + ".ecore");
-			File dir = outputEcoreFile.getParentFile();
-			if (!dir.exists()) {
-				dir.mkdirs();
-			}
+			List<EPackage> shards = EcoreSharding.shard(entry.getValue(),
+					shardSize);
+			for (int i = 0; i < shards.size(); i++) {
+				File outputEcoreFile = new File(output, packageName
+						+ (i > 0 ? "-" + i : "")
+						+ (compressEcore ? ".ecore" + Compression.GZIP
+								: ".ecore"));
+				File dir = outputEcoreFile.getParentFile();
+				if (!dir.exists()) {
+					dir.mkdirs();
+				}
 
-			org.eclipse.emf.ecore.resource.Resource resource = resourceSet
-					.createResource(org.eclipse.emf.common.util.URI
-							.createFileURI(outputEcoreFile.getAbsolutePath()));
-			resource.getContents().add(entry.getValue());
-			resources.add(resource);
+				org.eclipse.emf.ecore.resource.Resource resource = resourceSet
+						.createResource(org.eclipse.emf.common.util.URI
+								.createFileURI(outputEcoreFile
+										.getAbsolutePath()));
+				resource.getContents().add(shards.get(i));
+				resources.add(resource);
+			}
+			// packages of unbound namespaces have no name and no shard files
+			if (packageName != null) {
+				deleteShards(output, packageName, shards.size());
+			}
 		}
 
 		for (Resource resource : resources) {
-			System.out.println("saving: " + resource.getURI());
-			resource.save(Collections.EMPTY_MAP);
+			long start = monitor.isEnabled() ? System.nanoTime() : 0;
+			// only replace files whose content has changed
+			ChangeAwareFileOutputStream fileOut = new ChangeAwareFileOutputStream(
+					new File(resource.getURI().toFileString()));
+			OutputStream out = compressEcore ? Compression.compress(resource
+					.getURI().lastSegment(), fileOut) : fileOut;
+			boolean written = false;
+			try {
+				resource.save(out, Collections.EMPTY_MAP);
+				written = true;
+			} finally {
+				if (!written) {
+					// keep the previous output instead of a truncated file
+					fileOut.discard();
+				}
+				out.close();
+			}
+			if (monitor.isEnabled()) {
+				monitor.fileSaved(new File(resource.getURI().toFileString()),
+						fileOut.isChanged(), System.nanoTime() - start);
+			}
+			System.out.println((fileOut.isChanged() ? "saved: "
+					: "unchanged: ")
+					+ resource.getURI());
 		}
 	}
-}
+}
\ No newline at end of file
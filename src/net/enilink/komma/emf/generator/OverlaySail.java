@@ -0,0 +1,353 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.openrdf.cursor.Cursor;
+import org.openrdf.model.Namespace;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.algebra.QueryModel;
+import org.openrdf.query.algebra.evaluation.TripleSource;
+import org.openrdf.query.algebra.evaluation.impl.BindingAssigner;
+import org.openrdf.query.algebra.evaluation.impl.CompareOptimizer;
+import org.openrdf.query.algebra.evaluation.impl.ConjunctiveConstraintSplitter;
+import org.openrdf.query.algebra.evaluation.impl.ConstantOptimizer;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStatistics;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.algebra.evaluation.impl.FilterOptimizer;
+import org.openrdf.query.algebra.evaluation.impl.QueryJoinOptimizer;
+import org.openrdf.query.algebra.evaluation.impl.QueryModelPruner;
+import org.openrdf.query.algebra.evaluation.impl.QueryOptimizerList;
+import org.openrdf.query.algebra.evaluation.impl.SameTermFilterOptimizer;
+import org.openrdf.sail.Sail;
+import org.openrdf.sail.SailConnection;
+import org.openrdf.sail.helpers.SailConnectionWrapper;
+import org.openrdf.sail.helpers.SailWrapper;
+import org.openrdf.store.StoreException;
+
+/**
+ * A sail that layers a private, writable overlay on top of a shared base sail.
+ * All read operations see the union of both sails while all write operations
+ * are applied to the overlay only. Statements of the base that are removed
+ * through this sail are hidden by the overlay and remain untouched in the
+ * base.
+ * <p>
+ * This allows to share a large, read-only base (e.g. imported vocabularies)
+ * between many conversions that only add a small amount of data.
+ */
+class OverlaySail extends SailWrapper {
+	private final Sail base;
+
+	/**
+	 * keys of the statements of the base that were removed through this sail,
+	 * the context is part of the key since {@link Statement#equals(Object)}
+	 * ignores it
+	 */
+	private final Set<List<Value>> removed = Collections
+			.synchronizedSet(new HashSet<List<Value>>());
+
+	/**
+	 * Creates a new overlay sail.
+	 *
+	 * @param base
+	 *            the initialized, shared base sail - it is never modified
+	 * @param overlay
+	 *            the sail that receives all modifications
+	 */
+	public OverlaySail(Sail base, Sail overlay) {
+		super(overlay);
+		this.base = base;
+	}
+
+	@Override
+	public SailConnection getConnection() throws StoreException {
+		SailConnection overlayConn = super.getConnection();
+		try {
+			return new OverlayConnection(base.getConnection(), overlayConn);
+		} catch (StoreException e) {
+			overlayConn.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean isWritable() throws StoreException {
+		return getDelegate().isWritable();
+	}
+
+	private class OverlayConnection extends SailConnectionWrapper {
+		private final SailConnection baseConn;
+
+		OverlayConnection(SailConnection baseConn, SailConnection overlayConn) {
+			super(overlayConn);
+			this.baseConn = baseConn;
+		}
+
+		@Override
+		public void close() throws StoreException {
+			try {
+				super.close();
+			} finally {
+				baseConn.close();
+			}
+		}
+
+		@Override
+		public Cursor<? extends Statement> getStatements(Resource subj,
+				URI pred, Value obj, boolean includeInferred,
+				Resource... contexts) throws StoreException {
+			return new UnionCursor(baseConn.getStatements(subj, pred, obj,
+					includeInferred, contexts), super.getStatements(subj,
+					pred, obj, includeInferred, contexts));
+		}
+
+		@Override
+		public long size(Resource subj, URI pred, Value obj,
+				boolean includeInferred, Resource... contexts)
+				throws StoreException {
+			if (removed.isEmpty()) {
+				return baseConn.size(subj, pred, obj, includeInferred,
+						contexts)
+						+ super.size(subj, pred, obj, includeInferred,
+								contexts);
+			}
+			long size = 0;
+			Cursor<? extends Statement> stmts = getStatements(subj, pred,
+					obj, includeInferred, contexts);
+			try {
+				while (stmts.next() != null) {
+					size++;
+				}
+			} finally {
+				stmts.close();
+			}
+			return size;
+		}
+
+		@Override
+		public Cursor<? extends Resource> getContextIDs()
+				throws StoreException {
+			Set<Resource> contextIDs = new HashSet<Resource>();
+			addAll(contextIDs, baseConn.getContextIDs());
+			addAll(contextIDs, super.getContextIDs());
+			return new IteratorCursor<Resource>(contextIDs.iterator());
+		}
+
+		@Override
+		public Cursor<? extends Namespace> getNamespaces()
+				throws StoreException {
+			Set<Namespace> namespaces = new HashSet<Namespace>();
+			Set<String> prefixes = new HashSet<String>();
+			Cursor<? extends Namespace> overlayNamespaces = super
+					.getNamespaces();
+			try {
+				Namespace namespace;
+				while ((namespace = overlayNamespaces.next()) != null) {
+					prefixes.add(namespace.getPrefix());
+					namespaces.add(namespace);
+				}
+			} finally {
+				overlayNamespaces.close();
+			}
+			// prefixes of the overlay take precedence
+			Cursor<? extends Namespace> baseNamespaces = baseConn
+					.getNamespaces();
+			try {
+				Namespace namespace;
+				while ((namespace = baseNamespaces.next()) != null) {
+					if (prefixes.add(namespace.getPrefix())) {
+						namespaces.add(namespace);
+					}
+				}
+			} finally {
+				baseNamespaces.close();
+			}
+			return new IteratorCursor<Namespace>(namespaces.iterator());
+		}
+
+		@Override
+		public String getNamespace(String prefix) throws StoreException {
+			String namespace = super.getNamespace(prefix);
+			return namespace != null ? namespace : baseConn
+					.getNamespace(prefix);
+		}
+
+		@Override
+		public Cursor<? extends BindingSet> evaluate(QueryModel query,
+				BindingSet bindings, final boolean includeInferred)
+				throws StoreException {
+			// evaluate the query against the union of base and overlay
+			TripleSource tripleSource = new TripleSource() {
+				public Cursor<? extends Statement> getStatements(
+						Resource subj, URI pred, Value obj,
+						Resource... contexts) throws StoreException {
+					return OverlayConnection.this.getStatements(subj, pred,
+							obj, includeInferred, contexts);
+				}
+
+				public ValueFactory getValueFactory() {
+					return OverlaySail.this.getValueFactory();
+				}
+			};
+			// the optimizers modify the query model
+			query = query.clone();
+			EvaluationStrategyImpl strategy = new EvaluationStrategyImpl(
+					tripleSource, query);
+			// the optimizers that a MemoryStore applies
+			QueryOptimizerList optimizers = new QueryOptimizerList();
+			optimizers.add(new BindingAssigner());
+			optimizers.add(new ConstantOptimizer(strategy));
+			optimizers.add(new CompareOptimizer());
+			optimizers.add(new ConjunctiveConstraintSplitter());
+			optimizers.add(new SameTermFilterOptimizer());
+			optimizers.add(new QueryModelPruner());
+			optimizers.add(new QueryJoinOptimizer(new EvaluationStatistics()));
+			optimizers.add(new FilterOptimizer());
+			optimizers.optimize(query, bindings);
+			return strategy.evaluate(query, bindings);
+		}
+
+		@Override
+		public void addStatement(Resource subj, URI pred, Value obj,
+				Resource... contexts) throws StoreException {
+			// no context means the default context when adding but all
+			// contexts when reading
+			if (contexts.length == 0) {
+				contexts = new Resource[] { null };
+			}
+			for (Resource context : contexts) {
+				if (baseContains(subj, pred, obj, context)) {
+					// do not duplicate statements of the base but show them
+					// again if they were removed before
+					removed.remove(key(subj, pred, obj, context));
+				} else {
+					super.addStatement(subj, pred, obj, context);
+				}
+			}
+		}
+
+		@Override
+		public void removeStatements(Resource subj, URI pred, Value obj,
+				Resource... contexts) throws StoreException {
+			super.removeStatements(subj, pred, obj, contexts);
+			// no context means all contexts when removing
+			Cursor<? extends Statement> stmts = baseConn.getStatements(subj,
+					pred, obj, false, contexts);
+			try {
+				Statement stmt;
+				while ((stmt = stmts.next()) != null) {
+					removed.add(key(stmt));
+				}
+			} finally {
+				stmts.close();
+			}
+		}
+
+		private boolean baseContains(Resource subj, URI pred, Value obj,
+				Resource context) throws StoreException {
+			Cursor<? extends Statement> stmts = baseConn.getStatements(subj,
+					pred, obj, false, context);
+			try {
+				return stmts.next() != null;
+			} finally {
+				stmts.close();
+			}
+		}
+	}
+
+	private static <T> void addAll(Set<T> set, Cursor<? extends T> cursor)
+			throws StoreException {
+		try {
+			T element;
+			while ((element = cursor.next()) != null) {
+				set.add(element);
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private static List<Value> key(Resource subj, URI pred, Value obj,
+			Resource context) {
+		return Arrays.<Value> asList(subj, pred, obj, context);
+	}
+
+	private static List<Value> key(Statement stmt) {
+		return key(stmt.getSubject(), stmt.getPredicate(), stmt.getObject(),
+				stmt.getContext());
+	}
+
+	/**
+	 * Returns the statements of the base that are not hidden followed by the
+	 * statements of the overlay.
+	 */
+	private class UnionCursor implements Cursor<Statement> {
+		private Cursor<? extends Statement> baseStmts;
+
+		private final Cursor<? extends Statement> overlayStmts;
+
+		UnionCursor(Cursor<? extends Statement> baseStmts,
+				Cursor<? extends Statement> overlayStmts) {
+			this.baseStmts = baseStmts;
+			this.overlayStmts = overlayStmts;
+		}
+
+		public Statement next() throws StoreException {
+			if (baseStmts != null) {
+				Statement stmt;
+				while ((stmt = baseStmts.next()) != null) {
+					if (removed.isEmpty() || !removed.contains(key(stmt))) {
+						return stmt;
+					}
+				}
+				baseStmts.close();
+				baseStmts = null;
+			}
+			return overlayStmts.next();
+		}
+
+		public void close() throws StoreException {
+			try {
+				if (baseStmts != null) {
+					baseStmts.close();
+				}
+			} finally {
+				overlayStmts.close();
+			}
+		}
+	}
+
+	private static class IteratorCursor<E> implements Cursor<E> {
+		private final Iterator<E> iterator;
+
+		IteratorCursor(Iterator<E> iterator) {
+			this.iterator = iterator;
+		}
+
+		public E next() {
+			return iterator.hasNext() ? iterator.next() : null;
+		}
+
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.enilink.komma.core.IKommaManager;
+import net.enilink.komma.core.IQuery;
+
+/**
+ * Keeps the parsed and prepared queries of a manager for reuse, so each
+ * query string is only parsed once per manager instead of once per
+ * evaluation.
+ * <p>
+ * A prepared query holds its parameter bindings and is therefore never used
+ * by two threads at once. Each query string has a pool of idle queries, a
+ * query is taken from the pool for an evaluation and returned afterwards.
+ * Additional queries are only prepared if all pooled queries are in use.
+ * Queries are pooled separately for each set of parameter names and result
+ * type, so a reused query never keeps a binding of an earlier evaluation.
+ * <p>
+ * A manager wraps a single repository connection. All queries of this cache
+ * are evaluated through that connection, so the pool only keeps the bindings
+ * of concurrent evaluations apart. It neither runs evaluations in parallel
+ * nor makes it safe to share a manager that is not thread-safe itself.
+ */
+class QueryCache {
+	private final IKommaManager manager;
+
+	/** query key -&gt; idle prepared queries */
+	private final ConcurrentMap<String, Queue<IQuery<?>>> idle = new ConcurrentHashMap<String, Queue<IQuery<?>>>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	QueryCache(IKommaManager manager) {
+		this.manager = manager;
+	}
+
+	/**
+	 * Returns the manager that is used to prepare the queries.
+	 */
+	IKommaManager getManager() {
+		return manager;
+	}
+
+	/**
+	 * Returns the number of evaluations that reused a prepared query.
+	 */
+	long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of evaluations that had to prepare a query.
+	 */
+	long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the key of the pool for a query string that is evaluated with
+	 * the given result type and parameters.
+	 */
+	private static String key(String sparql, Class<?> resultType,
+			Object... parameters) {
+		StringBuilder key = new StringBuilder(sparql);
+		key.append('\u0000').append(
+				resultType != null ? resultType.getName() : "");
+		for (int i = 0; i < parameters.length; i += 2) {
+			key.append('\u0000').append(parameters[i]);
+		}
+		return key.toString();
+	}
+
+	private IQuery<?> acquire(String key, String sparql) {
+		Queue<IQuery<?>> queries = idle.get(key);
+		IQuery<?> query = queries != null ? queries.poll() : null;
+		if (query != null) {
+			hits.incrementAndGet();
+			return query;
+		}
+		misses.incrementAndGet();
+		return manager.createQuery(sparql);
+	}
+
+	private void release(String key, IQuery<?> query) {
+		Queue<IQuery<?>> queries = idle.get(key);
+		if (queries == null) {
+			queries = new ConcurrentLinkedQueue<IQuery<?>>();
+			Queue<IQuery<?>> existing = idle.putIfAbsent(key, queries);
+			if (existing != null) {
+				queries = existing;
+			}
+		}
+		queries.offer(query);
+	}
+
+	/**
+	 * Evaluates a query with the given parameters and returns all results.
+	 * The results are fully read, so the query can be reused immediately.
+	 *
+	 * @param sparql
+	 *            the query string
+	 * @param resultType
+	 *            the type of the results or <code>null</code> to use the
+	 *            default mapping of the manager
+	 * @param parameters
+	 *            alternating parameter names and values
+	 * @return the results
+	 */
+	@SuppressWarnings("unchecked")
+	<T> List<T> evaluate(String sparql, Class<T> resultType,
+			Object... parameters) {
+		String key = key(sparql, resultType, parameters);
+		IQuery<?> query = acquire(key, sparql);
+		try {
+			for (int i = 0; i < parameters.length; i += 2) {
+				query.setParameter((String) parameters[i], parameters[i + 1]);
+			}
+			IQuery<?> typedQuery = resultType != null ? query
+					.bindResultType(resultType) : query;
+			List<T> results = new ArrayList<T>();
+			for (Object result : typedQuery.evaluate()) {
+				results.add((T) result);
+			}
+			return results;
+		} finally {
+			release(key, query);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return hits + " hits, " + misses + " misses";
+	}
+}
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.openrdf.rio.RDFFormat;
+
+/**
+ * Selection of RDF formats by name, file name or content.
+ */
+class RdfFormats {
+	/** Name under which Rio registers Sesame's binary RDF format */
+	static final String BINARY_NAME = "BinaryRDF";
+
+	/** Magic number at the start of binary RDF files */
+	private static final byte[] BINARY_MAGIC = { 'B', 'R', 'D', 'F' };
+
+	/** Number of bytes that are inspected to guess the format */
+	static final int SNIFF_LENGTH = 1024;
+
+	private RdfFormats() {
+	}
+
+	/**
+	 * Returns Sesame's binary RDF format or <code>null</code> if it is not
+	 * supported by the Rio version on the class path.
+	 */
+	static RDFFormat binary() {
+		return RDFFormat.valueOf(BINARY_NAME);
+	}
+
+	/**
+	 * Returns the format for one of the short names <code>rdfxml</code>,
+	 * <code>ntriples</code>, <code>turtle</code> and <code>binary</code>, a
+	 * registered format name or a file extension.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the format is unknown or not supported
+	 */
+	static RDFFormat forName(String name) {
+		RDFFormat format;
+		String lowerName = name.toLowerCase();
+		if ("rdfxml".equals(lowerName) || "xml".equals(lowerName)) {
+			format = RDFFormat.RDFXML;
+		} else if ("ntriples".equals(lowerName) || "nt".equals(lowerName)) {
+			format = RDFFormat.NTRIPLES;
+		} else if ("turtle".equals(lowerName) || "ttl".equals(lowerName)) {
+			format = RDFFormat.TURTLE;
+		} else if ("binary".equals(lowerName) || "brf".equals(lowerName)) {
+			format = binary();
+		} else {
+			format = RDFFormat.valueOf(name);
+			if (format == null) {
+				format = RDFFormat.forFileName("file." + name);
+			}
+		}
+		if (format == null) {
+			throw new IllegalArgumentException("Unsupported RDF format: "
+					+ name);
+		}
+		return format;
+	}
+
+	/**
+	 * Guesses the format of an uncompressed RDF document from its first
+	 * bytes. The stream must support {@link InputStream#mark(int)} and is
+	 * reset to its start.
+	 *
+	 * @return the guessed format or <code>null</code> if the content is not
+	 *         recognized
+	 */
+	static RDFFormat sniff(InputStream in) throws IOException {
+		byte[] head = new byte[SNIFF_LENGTH];
+		int length = 0;
+		in.mark(SNIFF_LENGTH);
+		try {
+			int read;
+			while (length < head.length
+					&& (read = in.read(head, length, head.length - length)) >= 0) {
+				length += read;
+			}
+		} finally {
+			in.reset();
+		}
+		return sniff(head, length);
+	}
+
+	static RDFFormat sniff(byte[] head, int length) {
+		if (startsWith(head, length, 0, BINARY_MAGIC)) {
+			return binary();
+		}
+		int pos = 0;
+		// skip UTF-8 byte order mark
+		if (length >= 3 && (head[0] & 0xff) == 0xef
+				&& (head[1] & 0xff) == 0xbb && (head[2] & 0xff) == 0xbf) {
+			pos = 3;
+		}
+		while (pos < length) {
+			pos = skipWhitespace(head, length, pos);
+			if (pos >= length) {
+				return null;
+			}
+			char c = (char) head[pos];
+			if (c == '#') {
+				// comments are allowed in N-Triples and Turtle
+				while (pos < length && head[pos] != '\n' && head[pos] != '\r') {
+					pos++;
+				}
+			} else if (c == '@'
+					|| startsWith(head, length, pos, ascii("PREFIX"))
+					|| startsWith(head, length, pos, ascii("BASE"))) {
+				return RDFFormat.TURTLE;
+			} else if (c == '<') {
+				// RDF/XML starts with a tag, N-Triples and Turtle with an IRI
+				if (pos + 1 < length
+						&& (head[pos + 1] == '?' || head[pos + 1] == '!' || Character
+								.isLetter((char) head[pos + 1]))
+						&& !isIri(head, length, pos)) {
+					return RDFFormat.RDFXML;
+				}
+				return isNTriples(head, length, pos) ? RDFFormat.NTRIPLES
+						: RDFFormat.TURTLE;
+			} else if (c == '_') {
+				return isNTriples(head, length, pos) ? RDFFormat.NTRIPLES
+						: RDFFormat.TURTLE;
+			} else if (c == '[' || c == '(' || isPrefixedName(head, length, pos)) {
+				// Turtle may start with an anonymous node, a collection or a
+				// prefixed name like :Class or owl:Thing
+				return RDFFormat.TURTLE;
+			} else {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns <code>true</code> if the token at the given position is a
+	 * prefixed name, i.e. an optional prefix of name characters followed by a
+	 * colon.
+	 */
+	private static boolean isPrefixedName(byte[] head, int length, int pos) {
+		int end = pos;
+		while (end < length && head[end] != ':') {
+			// non-ASCII bytes may be part of UTF-8 encoded name characters
+			int c = head[end] & 0xff;
+			if (c < 0x80 && !(Character.isLetterOrDigit(c) || c == '_'
+					|| c == '-' || c == '.')) {
+				return false;
+			}
+			end++;
+		}
+		return end < length
+				&& (end == pos || Character.isLetter(head[pos] & 0x7f));
+	}
+
+	/**
+	 * Returns <code>true</code> if the tag at the given position is an
+	 * absolute IRI like <code>&lt;http://...&gt;</code> instead of an XML
+	 * element like <code>&lt;rdf:RDF ...&gt;</code>.
+	 */
+	private static boolean isIri(byte[] head, int length, int pos) {
+		int end = pos + 1;
+		while (end < length && head[end] != '>') {
+			if (Character.isWhitespace((char) head[end])) {
+				return false;
+			}
+			end++;
+		}
+		String tag = new String(head, pos + 1, end - pos - 1);
+		return tag.contains("://") || tag.startsWith("urn:");
+	}
+
+	/**
+	 * Returns <code>true</code> if all complete lines starting at the given
+	 * position only use full IRIs or blank node labels as subject and
+	 * predicate and end with a dot.
+	 */
+	private static boolean isNTriples(byte[] head, int length, int pos) {
+		String text = new String(head, pos, length - pos);
+		if (length == SNIFF_LENGTH) {
+			// ignore the truncated last line
+			int end = Math.max(text.lastIndexOf('\n'), text.lastIndexOf('\r'));
+			if (end < 0) {
+				return false;
+			}
+			text = text.substring(0, end);
+		}
+		for (String line : text.split("[\r\n]+")) {
+			line = line.trim();
+			if (line.length() == 0 || line.startsWith("#")) {
+				continue;
+			}
+			if (!line.endsWith(".")
+					|| !line.matches("(<[^>]*>|_:\\S+)\\s+<[^>]*>\\s+.*")) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int skipWhitespace(byte[] head, int length, int pos) {
+		while (pos < length && Character.isWhitespace((char) head[pos])) {
+			pos++;
+		}
+		return pos;
+	}
+
+	private static boolean startsWith(byte[] head, int length, int pos,
+			byte[] prefix) {
+		if (length - pos < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (head[pos + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] ascii(String value) {
+		byte[] bytes = new byte[value.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) value.charAt(i);
+		}
+		return bytes;
+	}
+}
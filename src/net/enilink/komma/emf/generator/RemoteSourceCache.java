@@ -0,0 +1,322 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An on-disk cache for remote RDF sources. Cached sources are revalidated
+ * with conditional requests using the <code>ETag</code> and
+ * <code>Last-Modified</code> headers of the previous response. In offline
+ * mode only cached sources are returned.
+ */
+public class RemoteSourceCache {
+	private static final String PROPERTY_URL = "url";
+
+	private static final String PROPERTY_ETAG = "etag";
+
+	private static final String PROPERTY_LAST_MODIFIED = "lastModified";
+
+	/** canonical path of a cached file -&gt; lock of its entry */
+	private static final Map<String, Object> LOCKS = new HashMap<String, Object>();
+
+	final Logger logger = LoggerFactory.getLogger(RemoteSourceCache.class);
+
+	private final File directory;
+
+	private boolean offline;
+
+	private int connectTimeout = 30000;
+
+	private int readTimeout = 60000;
+
+	/**
+	 * Creates a cache that stores its entries in the given directory.
+	 *
+	 * @param directory
+	 *            the cache directory, created on demand
+	 */
+	public RemoteSourceCache(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns <code>true</code> if the given URL refers to a source that is
+	 * handled by this cache.
+	 */
+	public static boolean isRemote(URL url) {
+		String protocol = url.getProtocol();
+		return "http".equals(protocol) || "https".equals(protocol);
+	}
+
+	/**
+	 * If only cached sources should be used without contacting any server.
+	 */
+	public boolean isOffline() {
+		return offline;
+	}
+
+	/**
+	 * If only cached sources should be used without contacting any server.
+	 *
+	 * @param offline
+	 *            <code>true</code> to serve sources only from the cache
+	 */
+	public void setOffline(boolean offline) {
+		this.offline = offline;
+	}
+
+	/**
+	 * Timeouts in milliseconds for connecting to and reading from a server.
+	 */
+	public void setTimeouts(int connectTimeout, int readTimeout) {
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Fetches the given sources concurrently.
+	 *
+	 * @param urls
+	 *            the remote sources
+	 * @param threads
+	 *            the maximum number of concurrent requests
+	 * @return a map from each URL to the cached file in the same order as the
+	 *         given URLs
+	 * @throws IOException
+	 *             if any of the sources could not be fetched
+	 */
+	public Map<URL, File> fetchAll(Collection<URL> urls, int threads)
+			throws IOException {
+		Map<URL, File> files = new LinkedHashMap<URL, File>();
+		if (urls.isEmpty()) {
+			return files;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+				Math.min(threads, urls.size())));
+		try {
+			List<Future<File>> results = new ArrayList<Future<File>>();
+			for (final URL url : urls) {
+				results.add(executor.submit(new Callable<File>() {
+					public File call() throws IOException {
+						return fetch(url);
+					}
+				}));
+			}
+			int i = 0;
+			for (URL url : urls) {
+				files.put(url, get(results.get(i++)));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return files;
+	}
+
+	private static File get(Future<File> result) throws IOException {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while fetching sources");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Returns a local copy of the given source. The source is downloaded if
+	 * it is not cached yet or has been modified since it was cached.
+	 *
+	 * @param url
+	 *            the remote source
+	 * @return the cached file
+	 * @throws IOException
+	 *             if the source is neither cached nor could be downloaded
+	 */
+	public File fetch(URL url) throws IOException {
+		String key = key(url);
+		File dataFile = new File(directory, key);
+		File propertiesFile = new File(directory, key + ".properties");
+
+		Properties properties = new Properties();
+		synchronized (lock(dataFile)) {
+			if (dataFile.exists() && propertiesFile.exists()) {
+				InputStream in = new FileInputStream(propertiesFile);
+				try {
+					properties.load(in);
+				} finally {
+					in.close();
+				}
+			}
+		}
+		boolean cached = properties.containsKey(PROPERTY_URL);
+		if (offline) {
+			if (!cached) {
+				throw new IOException("Source is not cached: " + url);
+			}
+			return dataFile;
+		}
+
+		URLConnection conn = url.openConnection();
+		conn.setConnectTimeout(connectTimeout);
+		conn.setReadTimeout(readTimeout);
+		if (cached) {
+			String etag = properties.getProperty(PROPERTY_ETAG);
+			if (etag != null) {
+				conn.setRequestProperty("If-None-Match", etag);
+			}
+			String lastModified = properties
+					.getProperty(PROPERTY_LAST_MODIFIED);
+			if (lastModified != null) {
+				conn.setIfModifiedSince(Long.parseLong(lastModified));
+			}
+		}
+		if (conn instanceof HttpURLConnection) {
+			HttpURLConnection httpConn = (HttpURLConnection) conn;
+			int status = httpConn.getResponseCode();
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached) {
+				logger.debug("Using cached source for {}", url);
+				httpConn.disconnect();
+				return dataFile;
+			}
+			if (status != HttpURLConnection.HTTP_OK) {
+				httpConn.disconnect();
+				throw new IOException("Unable to fetch " + url + ": "
+						+ status + " " + httpConn.getResponseMessage());
+			}
+		}
+
+		directory.mkdirs();
+		// download into temporary files to not corrupt an existing entry
+		File tmpFile = File.createTempFile(key, ".tmp", directory);
+		File tmpPropertiesFile = File.createTempFile(key, ".tmp", directory);
+		try {
+			InputStream in = conn.getInputStream();
+			try {
+				OutputStream out = new FileOutputStream(tmpFile);
+				try {
+					byte[] buffer = new byte[8192];
+					int read;
+					while ((read = in.read(buffer)) >= 0) {
+						out.write(buffer, 0, read);
+					}
+				} finally {
+					out.close();
+				}
+			} finally {
+				in.close();
+			}
+			properties.clear();
+			properties.setProperty(PROPERTY_URL, url.toExternalForm());
+			String etag = conn.getHeaderField("ETag");
+			if (etag != null) {
+				properties.setProperty(PROPERTY_ETAG, etag);
+			}
+			if (conn.getLastModified() != 0) {
+				properties.setProperty(PROPERTY_LAST_MODIFIED, String
+						.valueOf(conn.getLastModified()));
+			}
+			OutputStream out = new FileOutputStream(tmpPropertiesFile);
+			try {
+				properties.store(out, null);
+			} finally {
+				out.close();
+			}
+			// all caches of this JVM that share the directory replace the
+			// data and its metadata together
+			synchronized (lock(dataFile)) {
+				replace(tmpFile, dataFile);
+				replace(tmpPropertiesFile, propertiesFile);
+			}
+		} finally {
+			tmpFile.delete();
+			tmpPropertiesFile.delete();
+		}
+		logger.debug("Downloaded {} to {}", url, dataFile);
+		return dataFile;
+	}
+
+	/**
+	 * Returns the lock for the entry of the given file that is shared by all
+	 * caches of this JVM.
+	 */
+	private static Object lock(File file) throws IOException {
+		String path = file.getCanonicalPath();
+		synchronized (LOCKS) {
+			Object lock = LOCKS.get(path);
+			if (lock == null) {
+				lock = new Object();
+				LOCKS.put(path, lock);
+			}
+			return lock;
+		}
+	}
+
+	/**
+	 * Replaces the target with the source file. The file is renamed
+	 * atomically if the platform supports to rename a file onto an existing
+	 * one.
+	 */
+	private static void replace(File source, File target) throws IOException {
+		if (!source.renameTo(target)) {
+			target.delete();
+			if (!source.renameTo(target)) {
+				throw new IOException("Unable to store " + target);
+			}
+		}
+	}
+
+	private static String key(URL url) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			StringBuilder key = new StringBuilder();
+			for (byte b : digest.digest(url.toExternalForm().getBytes(
+					"UTF-8"))) {
+				key.append(Integer.toHexString((b & 0xff) | 0x100)
+						.substring(1));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+}
@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EDataType;
+import org.eclipse.emf.ecore.EEnum;
+import org.eclipse.emf.ecore.EEnumLiteral;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+import net.enilink.vocab.owl.Ontology;
+import net.enilink.komma.core.URIImpl;
+import net.enilink.komma.sesame.DecoratingSesameManagerFactory;
+import net.enilink.komma.sesame.ISesameManager;
+import net.enilink.komma.util.KommaUtil;
+
+/**
+ * Transforms ECore models into OWL and back and compares the resulting
+ * packages with the original packages. Each package, classifier, feature and
+ * enum literal is described by a signature of its structure and indexed by
+ * its path, so that models of any size are compared in linear time.
+ * <p>
+ * The harness reports all differences per element and the throughput of
+ * both directions in elements per second. Only the transformations are
+ * timed, neither loading the ECore files nor normalizing the ontology.
+ * <p>
+ * Map entry classes are not part of the comparison, since they are
+ * deliberately transformed into map classes of the KOMMA ontology.
+ */
+public class RoundTripHarness {
+	/** The kinds of differences between the original and the result */
+	public enum Kind {
+		/** the element is lost by the round trip */
+		MISSING,
+		/** the element is created by the round trip */
+		ADDED,
+		/** the element exists in both models with different structure */
+		CHANGED
+	}
+
+	/**
+	 * A difference of one element.
+	 */
+	public static class Difference {
+		final Kind kind;
+		final String path;
+		final String expected;
+		final String actual;
+
+		Difference(Kind kind, String path, String expected, String actual) {
+			this.kind = kind;
+			this.path = path;
+			this.expected = expected;
+			this.actual = actual;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		@Override
+		public String toString() {
+			switch (kind) {
+			case MISSING:
+				return "missing " + path + ": " + expected;
+			case ADDED:
+				return "added   " + path + ": " + actual;
+			default:
+				return "changed " + path + ": " + expected + " -> " + actual;
+			}
+		}
+	}
+
+	private final List<Difference> differences = new ArrayList<Difference>();
+
+	private int inputElements;
+
+	private int outputElements;
+
+	private long ecore2owlNanos;
+
+	private long owl2ecoreNanos;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			System.err.println("Usage: " + RoundTripHarness.class.getName()
+					+ " file.ecore...");
+			System.exit(2);
+		}
+		RoundTripHarness harness = new RoundTripHarness();
+		harness.run(Arrays.asList(args));
+		harness.report(System.out);
+	}
+
+	/**
+	 * Runs the round trip for the given ECore files and compares the
+	 * results.
+	 *
+	 * @param ecoreFiles
+	 *            the paths of the ECore files
+	 * @return <code>true</code> if the round trip preserved all elements
+	 */
+	public boolean run(Collection<String> ecoreFiles) throws Exception {
+		differences.clear();
+
+		Repository repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		try {
+			// namespace -> package
+			Map<String, String> packages = new HashMap<String, String>();
+			Map<String, String> expected;
+
+			ISesameManager manager = new DecoratingSesameManagerFactory(
+					KommaUtil.getCoreModule(), repository).createKommaManager();
+			try {
+				Ecore2OWLTransformer ecore2owl = new Ecore2OWLTransformer(
+						manager);
+				List<EPackage> inputs = new ArrayList<EPackage>();
+				for (Resource resource : ecore2owl.load(ecoreFiles)) {
+					EPackage ePackage = (EPackage) resource.getContents().get(
+							0);
+					inputs.add(ePackage);
+					packages.put(ePackage.getNsURI(), ePackage.getName());
+				}
+				// the transformation moves the classifiers of sub-packages
+				expected = index(inputs);
+				inputElements = expected.size();
+
+				long start = System.nanoTime();
+				for (EPackage ePackage : inputs) {
+					manager.createNamed(URIImpl.createURI(ePackage.getNsURI()),
+							Ontology.class);
+					ecore2owl.ecore2OWL(ePackage, Collections
+							.<String, String> emptyMap());
+				}
+				ecore2owlNanos = System.nanoTime() - start;
+			} finally {
+				manager.close();
+			}
+
+			OWL2EcoreTransformer owl2ecore = new OWL2EcoreTransformer(
+					new HashMap<String, EPackage>(), packages);
+			EcoreGenerator generator = new EcoreGenerator();
+			generator.setRepository(repository);
+			for (Map.Entry<String, String> e : packages.entrySet()) {
+				generator.bindPackageToNamespace(e.getValue(), e.getKey());
+			}
+			// like loading the ECore files, the normalization is not timed
+			generator.init();
+			long start = System.nanoTime();
+			generator.exportECore(owl2ecore);
+			owl2ecoreNanos = System.nanoTime() - start;
+			Map<String, EPackage> ePackages = owl2ecore.getEPackages();
+
+			Map<String, String> actual = index(ePackages.values());
+			outputElements = actual.size();
+			compare(expected, actual);
+		} finally {
+			repository.shutDown();
+		}
+		return differences.isEmpty();
+	}
+
+	/**
+	 * Returns the differences that were found by the last run.
+	 */
+	public List<Difference> getDifferences() {
+		return differences;
+	}
+
+	/**
+	 * Prints the throughput of both directions and all differences.
+	 */
+	public void report(PrintStream out) {
+		out.println(throughput("ecore2owl", inputElements, ecore2owlNanos));
+		out.println(throughput("owl2ecore", outputElements, owl2ecoreNanos));
+		for (Difference difference : differences) {
+			out.println(difference);
+		}
+		out.println(differences.size() + " differences in " + inputElements
+				+ " elements");
+	}
+
+	private static String throughput(String direction, int elements,
+			long nanos) {
+		long millis = nanos / 1000000;
+		long perSecond = nanos > 0 ? (long) (elements * 1e9 / nanos) : 0;
+		return direction + ": " + elements + " elements in " + millis
+				+ " ms (" + perSecond + " elements/s)";
+	}
+
+	private void compare(Map<String, String> expected,
+			Map<String, String> actual) {
+		for (Map.Entry<String, String> entry : expected.entrySet()) {
+			String signature = actual.remove(entry.getKey());
+			if (signature == null) {
+				differences.add(new Difference(Kind.MISSING, entry.getKey(),
+						entry.getValue(), null));
+			} else if (!signature.equals(entry.getValue())) {
+				differences.add(new Difference(Kind.CHANGED, entry.getKey(),
+						entry.getValue(), signature));
+			}
+		}
+		for (Map.Entry<String, String> entry : actual.entrySet()) {
+			differences.add(new Difference(Kind.ADDED, entry.getKey(), null,
+					entry.getValue()));
+		}
+	}
+
+	/**
+	 * Returns the signatures of all elements of the given packages and their
+	 * sub-packages by path.
+	 */
+	static Map<String, String> index(Collection<EPackage> ePackages) {
+		Map<String, String> index = new LinkedHashMap<String, String>();
+		for (EPackage ePackage : ePackages) {
+			index(ePackage, index);
+		}
+		return index;
+	}
+
+	private static void index(EPackage ePackage, Map<String, String> index) {
+		index.put(ePackage.getNsURI(), "package " + ePackage.getName());
+		for (EClassifier eClassifier : ePackage.getEClassifiers()) {
+			if ("java.util.Map$Entry".equals(eClassifier
+					.getInstanceClassName())) {
+				continue;
+			}
+			String path = path(eClassifier);
+			index.put(path, signature(eClassifier));
+			if (eClassifier instanceof EClass) {
+				for (EStructuralFeature eFeature : ((EClass) eClassifier)
+						.getEStructuralFeatures()) {
+					index.put(path + "." + eFeature.getName(),
+							signature(eFeature));
+				}
+			} else if (eClassifier instanceof EEnum) {
+				for (EEnumLiteral literal : ((EEnum) eClassifier)
+						.getELiterals()) {
+					index.put(path + "." + literal.getName(), "literal "
+							+ literal.getValue());
+				}
+			}
+		}
+		for (EPackage eSubPackage : ePackage.getESubpackages()) {
+			index(eSubPackage, index);
+		}
+	}
+
+	private static String path(EClassifier eClassifier) {
+		if (eClassifier == null) {
+			return "null";
+		}
+		EPackage ePackage = eClassifier.getEPackage();
+		return (ePackage != null ? ePackage.getNsURI() : "") + "#"
+				+ eClassifier.getName();
+	}
+
+	private static String signature(EClassifier eClassifier) {
+		StringBuilder signature = new StringBuilder();
+		if (eClassifier instanceof EClass) {
+			EClass eClass = (EClass) eClassifier;
+			signature.append(eClass.isInterface() ? "interface" : eClass
+					.isAbstract() ? "abstract class" : "class");
+			List<String> superTypes = new ArrayList<String>();
+			for (EClass superType : eClass.getESuperTypes()) {
+				superTypes.add(path(superType));
+			}
+			Collections.sort(superTypes);
+			if (!superTypes.isEmpty()) {
+				signature.append(" extends ").append(superTypes);
+			}
+		} else if (eClassifier instanceof EEnum) {
+			signature.append("enum");
+		} else if (eClassifier instanceof EDataType) {
+			signature.append("datatype ").append(
+					eClassifier.getInstanceClassName());
+		}
+		return signature.toString();
+	}
+
+	private static String signature(EStructuralFeature eFeature) {
+		StringBuilder signature = new StringBuilder();
+		if (eFeature instanceof EReference) {
+			EReference eReference = (EReference) eFeature;
+			signature.append(eReference.isContainment() ? "containment"
+					: "reference");
+			if (eReference.getEOpposite() != null) {
+				signature.append(" opposite ").append(
+						eReference.getEOpposite().getName());
+			}
+		} else {
+			signature.append("attribute");
+		}
+		signature.append(' ').append(path(eFeature.getEType()));
+		signature.append(" [").append(eFeature.getLowerBound()).append("..")
+				.append(eFeature.getUpperBound()).append(']');
+		return signature.toString();
+	}
+}
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import org.openrdf.sail.Sail;
+import org.openrdf.store.StoreException;
+
+/**
+ * A read-only repository of imported ontologies that is loaded once and can
+ * be shared by any number of (concurrent) conversions.
+ *
+ * @see OntologyConverter#createSharedBase()
+ * @see OntologyConverter#setSharedBase(SharedBase)
+ */
+public class SharedBase {
+	private final Sail sail;
+
+	private final String fingerprint;
+
+	SharedBase(Sail sail, String fingerprint) {
+		this.sail = sail;
+		this.fingerprint = fingerprint;
+	}
+
+	Sail getSail() {
+		return sail;
+	}
+
+	/**
+	 * Fingerprint of all inputs that were loaded into this base.
+	 */
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Releases the base. It must not be used by any conversion afterwards.
+	 *
+	 * @throws StoreException
+	 */
+	public void shutDown() throws StoreException {
+		sail.shutDown();
+	}
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+
+/**
+ * Compares the ECore models created by the compact graph engine with those
+ * created by {@link OWL2EcoreTransformer}.
+ */
+public class CompactOWL2EcoreTransformerTestcase {
+	private static final String NAMESPACE = "http://example.org/compact#";
+
+	private static final int CLASSES = 300;
+
+	@Test
+	public void graph() {
+		ValueFactory vf = new ValueFactoryImpl();
+		URI a = vf.createURI(NAMESPACE, "A");
+		URI b = vf.createURI(NAMESPACE, "B");
+		URI c = vf.createURI(NAMESPACE, "C");
+
+		CompactGraph.Builder builder = new CompactGraph.Builder();
+		builder.add(vf.createStatement(b, RDFS.SUBCLASSOF, a));
+		builder.add(vf.createStatement(c, RDFS.SUBCLASSOF, a));
+		builder.add(vf.createStatement(c, RDFS.SUBCLASSOF, b));
+		// duplicates are removed
+		builder.add(vf.createStatement(c, RDFS.SUBCLASSOF, b));
+		builder.add(vf.createStatement(a, RDFS.LABEL, vf.createLiteral("A")));
+		CompactGraph graph = builder.build();
+
+		Assert.assertEquals(4, graph.size());
+		int subClassOf = graph.id(RDFS.SUBCLASSOF.stringValue());
+		int idA = graph.id(a.stringValue());
+		int idB = graph.id(b.stringValue());
+		int idC = graph.id(c.stringValue());
+		Assert.assertEquals(CompactGraph.NONE, graph.id(NAMESPACE + "D"));
+
+		int[] subClasses = graph.subjects(subClassOf, idA);
+		Arrays.sort(subClasses);
+		int[] expected = { idB, idC };
+		Arrays.sort(expected);
+		Assert.assertTrue(Arrays.equals(expected, subClasses));
+		Assert.assertEquals(2, graph.objects(idC, subClassOf).length);
+		Assert.assertTrue(graph.contains(idC, subClassOf, idB));
+		Assert.assertFalse(graph.contains(idB, subClassOf, idC));
+		Assert.assertEquals(2, graph.subjects(subClassOf).length);
+
+		int[] labels = graph.objects(idA, graph.id(RDFS.LABEL.stringValue()));
+		Assert.assertEquals(1, labels.length);
+		Assert.assertEquals(CompactGraph.LITERAL, graph.kind(labels[0]));
+		Assert.assertEquals("A", graph.value(labels[0]));
+		Assert.assertNull(graph.datatype(labels[0]));
+		Assert.assertEquals(0, graph.objects(idA, graph.id(RDF.TYPE
+				.stringValue())).length);
+	}
+
+	private File createOntology(File dir) throws IOException {
+		// the class chain with labels, datatype and object properties
+		StringBuilder content = new StringBuilder(ConversionFixtures.ontology(
+				NAMESPACE, CLASSES));
+		content.append(":Color a owl:Class ; owl:oneOf (:Red :Green :Blue) .\n");
+		for (int i = 0; i < CLASSES; i++) {
+			content.append(":Class" + i + " rdfs:comment \"Comment " + i
+					+ "\"");
+			if (i > 0) {
+				content.append(" ; owl:disjointWith :Class" + (i - 1));
+			}
+			content.append(" .\n");
+			content.append(":color" + i + " a owl:ObjectProperty ; "
+					+ "rdfs:domain :Class" + i + " ; rdfs:range :Color .\n");
+			if (i > 0) {
+				content.append(":next" + i + " a owl:ObjectProperty ; "
+						+ "rdfs:domain :Class" + (i - 1) + " ; rdfs:range :Class"
+						+ i + " ; owl:inverseOf :previous" + i + " .\n");
+				content.append(":previous" + i + " a owl:ObjectProperty ; "
+						+ "rdfs:domain :Class" + i + " ; rdfs:range :Class"
+						+ (i - 1) + " ; rdfs:subPropertyOf :next" + i + " .\n");
+			}
+		}
+		// subtypes of object properties without an explicit object
+		// property type
+		content.append(":ancestor a owl:TransitiveProperty ; "
+				+ "rdfs:domain :Class1 ; rdfs:range :Class1 .\n");
+		content.append(":sibling a owl:SymmetricProperty ; "
+				+ "rdfs:domain :Class1 ; rdfs:range :Class1 .\n");
+		content.append(":twin a owl:InverseFunctionalProperty ; "
+				+ "rdfs:domain :Class1 ; rdfs:range :Class2 ; "
+				+ "owl:inverseOf :twinOf .\n");
+		content.append(":twinOf a owl:ObjectProperty ; "
+				+ "rdfs:domain :Class2 ; rdfs:range :Class1 .\n");
+		// enumeration of literals that are named by their values
+		content.append(":Size a owl:Class ; owl:oneOf (\"01\"^^xsd:int "
+				+ "\"2.50\"^^xsd:double \"true\"^^xsd:boolean "
+				+ "\"large\") .\n");
+		content.append(":size a owl:DatatypeProperty ; "
+				+ "rdfs:domain :Class0 ; rdfs:range :Size .\n");
+		// a cycle of subclasses that results in equivalent classes
+		content.append(":Class0 rdfs:subClassOf :Class2 .\n");
+
+		File file = new File(dir, "compact.ttl");
+		ConversionFixtures.write(file, content.toString());
+		return file;
+	}
+
+	/** records the time of the normalization */
+	private static class NormalizationTimer extends ConversionMonitor {
+		long nanos;
+
+		@Override
+		public void normalized(boolean cached, long nanos) {
+			this.nanos += nanos;
+		}
+	}
+
+	/**
+	 * Converts the ontology and returns the time of the transformation in
+	 * milliseconds. Loading and normalizing the ontology are the same for both
+	 * engines and hence not included.
+	 */
+	private long convert(File ontology, File output, boolean compact)
+			throws Exception {
+		OntologyConverter converter = new OntologyConverter();
+		converter.addRdfSource(ontology.toURI().toURL());
+		converter.bindPackageToNamespace("compact", NAMESPACE);
+		converter.setCompactEngine(compact);
+		NormalizationTimer timer = new NormalizationTimer();
+		converter.setMonitor(timer);
+		try {
+			converter.init();
+			long start = System.nanoTime();
+			converter.createECore(output);
+			return (System.nanoTime() - start - timer.nanos) / 1000000;
+		} finally {
+			converter.shutDown();
+		}
+	}
+
+	@Test
+	public void sameModels() throws Exception {
+		File dir = new File("./out/compact");
+		dir.mkdirs();
+		File ontology = createOntology(dir);
+
+		File entities = new File(dir, "entities");
+		File compact = new File(dir, "compact");
+		long entitiesTime = convert(ontology, entities, false);
+		long compactTime = convert(ontology, compact, true);
+		System.out.println("entities " + entitiesTime + " ms, compact "
+				+ compactTime + " ms");
+
+		ConversionFixtures.assertSameFiles(entities, compact);
+	}
+}
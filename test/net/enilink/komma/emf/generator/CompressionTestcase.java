@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import junit.framework.Assert;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Ensures that gzip compression works without Apache Commons Compress and
+ * that only BZip2 reports the missing library.
+ */
+public class CompressionTestcase {
+	/**
+	 * Loads the compression class without access to any libraries of the
+	 * class path.
+	 */
+	private static Class<?> loadIsolated() throws Exception {
+		URL location = Compression.class.getProtectionDomain()
+				.getCodeSource().getLocation();
+		ClassLoader loader = new URLClassLoader(new URL[] { location }, null);
+		try {
+			loader.loadClass("org.apache.commons.compress."
+					+ "compressors.bzip2.BZip2CompressorInputStream");
+			System.out.println("Skipping test, Apache Commons Compress is "
+					+ "located next to the compression class");
+			Assume.assumeTrue(false);
+		} catch (ClassNotFoundException e) {
+			// expected
+		}
+		return loader.loadClass(Compression.class.getName());
+	}
+
+	private static Object invoke(Class<?> compression, String name,
+			Class<?> streamType, String filename, Object stream)
+			throws Throwable {
+		Method method = compression.getDeclaredMethod(name, String.class,
+				streamType);
+		method.setAccessible(true);
+		try {
+			return method.invoke(null, filename, stream);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	@Test
+	public void withoutCommonsCompress() throws Throwable {
+		Class<?> compression = loadIsolated();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		OutputStream out = (OutputStream) invoke(compression, "compress",
+				OutputStream.class, "a.owl.gz", bytes);
+		out.write("content".getBytes("UTF-8"));
+		out.close();
+		InputStream in = (InputStream) invoke(compression, "decompress",
+				InputStream.class, "a.owl.gz", new ByteArrayInputStream(bytes
+						.toByteArray()));
+		byte[] buffer = new byte[7];
+		int length = 0;
+		int read;
+		while (length < buffer.length
+				&& (read = in.read(buffer, length, buffer.length - length)) >= 0) {
+			length += read;
+		}
+		in.close();
+		Assert.assertEquals("content", new String(buffer, 0, length, "UTF-8"));
+
+		try {
+			invoke(compression, "decompress", InputStream.class, "a.owl.bz2",
+					new ByteArrayInputStream(new byte[0]));
+			Assert.fail("BZip2 requires Apache Commons Compress");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
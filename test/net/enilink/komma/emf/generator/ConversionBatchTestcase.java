@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.apache.commons.cli.ParseException;
+import org.junit.Test;
+
+/**
+ * Ensures that the jobs of a batch write the same files as standalone runs.
+ */
+public class ConversionBatchTestcase {
+	private static final String NAMESPACE = "http://example.org/batch#";
+
+	private static String[] arguments(File ontology, String pkg, File output) {
+		return new String[] { "-b", pkg + "=" + NAMESPACE, "-d",
+				output.getPath(), ontology.getPath() };
+	}
+
+	private static void runStandalone(String[] args) throws Exception {
+		OntologyConverter converter = OntologyConverter
+				.createConverter(OntologyConverter.parseArguments(args));
+		try {
+			converter.init();
+			converter.convert(OntologyConverter.parseArguments(args));
+		} finally {
+			converter.shutDown();
+		}
+	}
+
+	private static void appendJob(StringBuilder manifest, String... args) {
+		for (String arg : args) {
+			manifest.append('"').append(arg).append("\" ");
+		}
+		manifest.append('\n');
+	}
+
+	private static File createOntology(File dir) throws IOException {
+		return ConversionFixtures.createOntology(new File(dir, "batch.ttl"),
+				NAMESPACE, 50);
+	}
+
+	@Test
+	public void tokenize() throws Exception {
+		Assert.assertTrue(Arrays.equals(new String[] { "-b",
+				"a=http://example.org/", "-d", "out dir" }, ConversionBatch
+				.tokenize("  -b a=http://example.org/ -d \"out dir\" ")));
+	}
+
+	@Test
+	public void sameOutput() throws Exception {
+		File dir = new File("./out/batch");
+		dir.mkdirs();
+		File ontology = createOntology(dir);
+
+		String[] packages = { "first", "second", "third" };
+		StringBuilder manifest = new StringBuilder("# test jobs\n");
+		for (String pkg : packages) {
+			File standalone = new File(dir, "standalone-" + pkg);
+			runStandalone(arguments(ontology, pkg, standalone));
+			appendJob(manifest, arguments(ontology, pkg, new File(dir,
+					"batch-" + pkg)));
+		}
+		File manifestFile = new File(dir, "jobs.txt");
+		ConversionFixtures.write(manifestFile, manifest.toString());
+
+		Assert.assertTrue(ConversionBatch.read(manifestFile).run(2));
+
+		for (String pkg : packages) {
+			ConversionFixtures.assertSameFiles(new File(dir, "standalone-"
+					+ pkg), new File(dir, "batch-" + pkg));
+		}
+	}
+
+	@Test
+	public void sameOntologies() throws Exception {
+		File dir = new File("./out/batch-rdf");
+		dir.mkdirs();
+		File ecoreDir = new File(dir, "ecore");
+		runStandalone(arguments(createOntology(dir), "model", ecoreDir));
+		String ecore = new File(ecoreDir, "model.ecore").getPath();
+		String binding = "model=" + NAMESPACE;
+
+		// ECore to RDF as single file and split by namespace
+		File standalone = new File(dir, "standalone.owl");
+		File standaloneSplit = new File(dir, "standalone-split.owl");
+		runStandalone(new String[] { "-b", binding, "-r",
+				standalone.getPath(), ecore });
+		runStandalone(new String[] { "-b", binding, "-m", "-r",
+				standaloneSplit.getPath(), ecore });
+
+		StringBuilder manifest = new StringBuilder();
+		appendJob(manifest, "-b", binding, "-r", new File(dir, "batch.owl")
+				.getPath(), ecore);
+		appendJob(manifest, "-b", binding, "-m", "-r", new File(dir,
+				"batch-split.owl").getPath(), ecore);
+		File manifestFile = new File(dir, "jobs.txt");
+		ConversionFixtures.write(manifestFile, manifest.toString());
+
+		Assert.assertTrue(ConversionBatch.read(manifestFile).run(2));
+
+		Assert.assertTrue(Arrays.equals(ConversionFixtures.read(standalone),
+				ConversionFixtures.read(new File(dir, "batch.owl"))));
+		File standalonePartition = new File(dir, "standalone-split-model.owl");
+		Assert.assertTrue(standalonePartition.length() > 0);
+		Assert.assertTrue(Arrays.equals(ConversionFixtures
+				.read(standalonePartition), ConversionFixtures.read(new File(
+				dir, "batch-split-model.owl"))));
+	}
+
+	@Test(expected = ParseException.class)
+	public void splitOutputCollision() throws Exception {
+		File dir = new File("./out/batch-collision");
+		dir.mkdirs();
+		String binding = "model=" + NAMESPACE;
+		// the jobs are not run, hence the input does not need to exist
+		String ecore = new File(dir, "model.ecore").toURI().toString();
+		StringBuilder manifest = new StringBuilder();
+		// the first job writes all.owl split into all-model.owl
+		appendJob(manifest, "-b", binding, "-m", "-r", new File(dir,
+				"all.owl").getPath(), ecore);
+		appendJob(manifest, "-b", binding, "-r", new File(dir,
+				"all-model.owl").getPath(), ecore);
+		File manifestFile = new File(dir, "jobs.txt");
+		ConversionFixtures.write(manifestFile, manifest.toString());
+		ConversionBatch.read(manifestFile);
+	}
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.Assert;
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.xmi.impl.EcoreResourceFactoryImpl;
+
+/**
+ * Generated inputs and file helpers that are shared by the conversion tests.
+ */
+class ConversionFixtures {
+	static final String PREFIXES = "@prefix owl: <http://www.w3.org/2002/07/owl#> .\n"
+			+ "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n"
+			+ "@prefix xsd: <http://www.w3.org/2001/XMLSchema#> .\n";
+
+	private ConversionFixtures() {
+	}
+
+	/**
+	 * Writes the given content as UTF-8 into the given file.
+	 */
+	static void write(File file, String content) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(file),
+				"UTF-8");
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads the complete content of the given file.
+	 */
+	static byte[] read(File file) throws IOException {
+		ByteArrayOutputStream data = new ByteArrayOutputStream(
+				(int) file.length());
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				data.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return data.toByteArray();
+	}
+
+	/**
+	 * Deletes the given file or directory including its contents.
+	 */
+	static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Asserts that both directories contain the same non-empty set of files
+	 * with the same contents.
+	 */
+	static void assertSameFiles(File expected, File actual) throws IOException {
+		String[] files = expected.list();
+		Assert.assertNotNull(files);
+		Assert.assertTrue(files.length > 0);
+		Arrays.sort(files);
+		String[] actualFiles = actual.list();
+		Assert.assertNotNull(actualFiles);
+		Arrays.sort(actualFiles);
+		Assert.assertTrue(Arrays.equals(files, actualFiles));
+		for (String name : files) {
+			Assert.assertTrue("Files differ: " + name, Arrays.equals(
+					read(new File(expected, name)), read(new File(actual,
+							name))));
+		}
+	}
+
+	/**
+	 * Returns a Turtle document with a chain of classes
+	 * <code>Class0</code>, <code>Class1</code>, ... of the given namespace.
+	 * Each class is a sub class of its predecessor and has a label, a
+	 * functional datatype property <code>name<i>i</i></code> and an object
+	 * property <code>prop<i>i</i></code> with the range <code>Class0</code>.
+	 */
+	static String ontology(String namespace, int classes) {
+		StringBuilder content = new StringBuilder(PREFIXES);
+		content.append("@prefix : <" + namespace + "> .\n");
+		for (int i = 0; i < classes; i++) {
+			content.append(":Class" + i + " a owl:Class ; rdfs:label \"Class "
+					+ i + "\"");
+			if (i > 0) {
+				content.append(" ; rdfs:subClassOf :Class" + (i - 1));
+			}
+			content.append(" .\n");
+			content.append(":name" + i + " a owl:DatatypeProperty, "
+					+ "owl:FunctionalProperty ; rdfs:domain :Class" + i
+					+ " ; rdfs:range xsd:string .\n");
+			content.append(":prop" + i + " a owl:ObjectProperty ; "
+					+ "rdfs:domain :Class" + i + " ; rdfs:range :Class0 .\n");
+		}
+		return content.toString();
+	}
+
+	/**
+	 * Writes the ontology of {@link #ontology(String, int)} into the given
+	 * file.
+	 */
+	static File createOntology(File file, String namespace, int classes)
+			throws IOException {
+		write(file, ontology(namespace, classes));
+		return file;
+	}
+
+	/**
+	 * Saves a package with a chain of classes <code>Class0</code>,
+	 * <code>Class1</code>, ... into the given file. Each class is a sub class
+	 * of its predecessor and has an attribute <code>name<i>i</i></code> and a
+	 * multi-valued reference <code>ref<i>i</i></code> to its predecessor.
+	 */
+	static File createEcore(File file, String name, String nsURI, int classes)
+			throws IOException {
+		EcoreFactory factory = EcoreFactory.eINSTANCE;
+		EPackage ePackage = factory.createEPackage();
+		ePackage.setName(name);
+		ePackage.setNsPrefix(name);
+		ePackage.setNsURI(nsURI);
+
+		EClass previous = null;
+		for (int i = 0; i < classes; i++) {
+			EClass eClass = factory.createEClass();
+			eClass.setName("Class" + i);
+			EAttribute attribute = factory.createEAttribute();
+			attribute.setName("name" + i);
+			attribute.setEType(EcorePackage.eINSTANCE.getEString());
+			eClass.getEStructuralFeatures().add(attribute);
+			if (previous != null) {
+				eClass.getESuperTypes().add(previous);
+				EReference ref = factory.createEReference();
+				ref.setName("ref" + i);
+				ref.setEType(previous);
+				ref.setUpperBound(-1);
+				eClass.getEStructuralFeatures().add(ref);
+			}
+			ePackage.getEClassifiers().add(eClass);
+			previous = eClass;
+		}
+
+		ResourceSet resourceSet = new ResourceSetImpl();
+		resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap()
+				.put("ecore", new EcoreResourceFactoryImpl());
+		Resource resource = resourceSet
+				.createResource(org.eclipse.emf.common.util.URI
+						.createFileURI(file.getAbsolutePath()));
+		resource.getContents().add(ePackage);
+		resource.save(Collections.EMPTY_MAP);
+		return file;
+	}
+}
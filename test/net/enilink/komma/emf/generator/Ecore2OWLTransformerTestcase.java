@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.result.Result;
+import org.openrdf.sail.memory.MemoryStore;
+
+import net.enilink.komma.core.IKommaManager;
+import net.enilink.komma.core.URIImpl;
+import net.enilink.komma.sesame.DecoratingSesameManagerFactory;
+import net.enilink.komma.util.KommaUtil;
+import net.enilink.vocab.owl.Ontology;
+
+/**
+ * Ensures that datatype and object properties with the same name get
+ * distinct URIs, within a package, across packages and with the store.
+ */
+public class Ecore2OWLTransformerTestcase {
+	private static final String NS = "http://example.org/collision";
+
+	private Repository repository;
+
+	private IKommaManager manager;
+
+	private ResourceSet resourceSet;
+
+	private Ecore2OWLTransformer transformer;
+
+	@Before
+	public void setUp() throws Exception {
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		manager = new DecoratingSesameManagerFactory(KommaUtil
+				.getCoreModule(), repository).createKommaManager();
+		manager.createNamed(URIImpl.createURI(NS), Ontology.class);
+		resourceSet = Ecore2OWLTransformer.createResourceSet();
+		transformer = new Ecore2OWLTransformer(manager, resourceSet);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		manager.close();
+		repository.shutDown();
+	}
+
+	private Resource createPackage(String name) {
+		EPackage ePackage = EcoreFactory.eINSTANCE.createEPackage();
+		ePackage.setName(name);
+		ePackage.setNsPrefix(name);
+		ePackage.setNsURI(NS);
+		Resource resource = resourceSet.createResource(
+				org.eclipse.emf.common.util.URI.createURI("memory:/" + name
+						+ ".ecore"));
+		resource.getContents().add(ePackage);
+		return resource;
+	}
+
+	private static EClass addClass(Resource resource, String name) {
+		EClass eClass = EcoreFactory.eINSTANCE.createEClass();
+		eClass.setName(name);
+		((EPackage) resource.getContents().get(0)).getEClassifiers().add(
+				eClass);
+		return eClass;
+	}
+
+	private static void addAttribute(EClass eClass, String name) {
+		EAttribute eAttribute = EcoreFactory.eINSTANCE.createEAttribute();
+		eAttribute.setName(name);
+		eAttribute.setEType(EcorePackage.eINSTANCE.getEString());
+		eClass.getEStructuralFeatures().add(eAttribute);
+	}
+
+	private static void addReference(EClass eClass, String name) {
+		EReference eReference = EcoreFactory.eINSTANCE.createEReference();
+		eReference.setName(name);
+		eReference.setEType(eClass);
+		eClass.getEStructuralFeatures().add(eReference);
+	}
+
+	private boolean hasType(String name, URI type) throws Exception {
+		RepositoryConnection conn = repository.getConnection();
+		try {
+			ValueFactory vf = conn.getValueFactory();
+			Result<Statement> stmts = conn.match(vf.createURI(NS + "#"
+					+ name), RDF.TYPE, type, false);
+			try {
+				return stmts.hasNext();
+			} finally {
+				stmts.close();
+			}
+		} finally {
+			conn.close();
+		}
+	}
+
+	private void assertProperties(String objectProperty,
+			String datatypeProperty) throws Exception {
+		Assert.assertTrue(hasType(objectProperty, OWL.OBJECTPROPERTY));
+		Assert.assertFalse(hasType(objectProperty, OWL.DATATYPEPROPERTY));
+		Assert.assertTrue(hasType(datatypeProperty, OWL.DATATYPEPROPERTY));
+		Assert.assertFalse(hasType(datatypeProperty, OWL.OBJECTPROPERTY));
+	}
+
+	@Test
+	public void samePackage() throws Exception {
+		Resource resource = createPackage("first");
+		addAttribute(addClass(resource, "A"), "name");
+		addReference(addClass(resource, "B"), "name");
+		transformer.ecore2OWL(resource, null);
+
+		assertProperties("name", "nameData");
+	}
+
+	@Test
+	public void samePackageDataName() throws Exception {
+		Resource resource = createPackage("first");
+		addAttribute(addClass(resource, "A"), "data");
+		addReference(addClass(resource, "B"), "data");
+		transformer.ecore2OWL(resource, null);
+
+		assertProperties("data", "dataValue");
+	}
+
+	@Test
+	public void acrossPackages() throws Exception {
+		// the datatype property is transformed before the object property
+		Resource first = createPackage("first");
+		addAttribute(addClass(first, "A"), "value");
+		Resource second = createPackage("second");
+		addReference(addClass(second, "B"), "value");
+
+		List<Resource> resources = new ArrayList<Resource>();
+		resources.add(first);
+		resources.add(second);
+		transformer.planPropertyNames(resources);
+		for (Resource resource : resources) {
+			transformer.ecore2OWL(resource, null);
+		}
+
+		assertProperties("value", "valueData");
+	}
+
+	@Test
+	public void storeCollision() throws Exception {
+		RepositoryConnection conn = repository.getConnection();
+		try {
+			conn.add(conn.getValueFactory().createURI(NS + "#title"),
+					RDF.TYPE, OWL.OBJECTPROPERTY);
+		} finally {
+			conn.close();
+		}
+
+		Resource resource = createPackage("first");
+		addAttribute(addClass(resource, "A"), "title");
+		transformer.ecore2OWL(resource, null);
+
+		assertProperties("title", "titleData");
+	}
+}
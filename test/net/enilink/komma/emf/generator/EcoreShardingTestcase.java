@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.xmi.impl.EcoreResourceFactoryImpl;
+import org.junit.Test;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.result.Result;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.sail.memory.MemoryStore;
+
+/**
+ * Saves a large package once as a single file and once as shards and
+ * compares the time that is required to load a single class. Ensures that
+ * sharded packages are converted back to the original ontology.
+ */
+public class EcoreShardingTestcase {
+	private static final int CLASSES = 20000;
+
+	private static final int SHARD_SIZE = 1000;
+
+	private static final int HIERARCHY_DEPTH = 10;
+
+	private static ResourceSet createResourceSet() {
+		ResourceSet resourceSet = new ResourceSetImpl();
+		resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap()
+				.put("ecore", new EcoreResourceFactoryImpl());
+		return resourceSet;
+	}
+
+	private static EPackage createPackage() {
+		EcoreFactory factory = EcoreFactory.eINSTANCE;
+		EPackage ePackage = factory.createEPackage();
+		ePackage.setName("large");
+		ePackage.setNsPrefix("large");
+		ePackage.setNsURI("http://example.org/large#");
+		EClass superClass = null;
+		for (int i = 0; i < CLASSES; i++) {
+			EClass eClass = factory.createEClass();
+			eClass.setName("Class" + i);
+			// short hierarchies that form independent clusters
+			if (i % HIERARCHY_DEPTH != 0) {
+				eClass.getESuperTypes().add(superClass);
+			}
+			ePackage.getEClassifiers().add(eClass);
+			superClass = eClass;
+		}
+		// a second super type that is stored within the last shard
+		EClass second = (EClass) ePackage.getEClassifiers().get(1);
+		EClass last = (EClass) ePackage.getEClassifiers().get(CLASSES - 1);
+		second.getESuperTypes().add(last);
+		return ePackage;
+	}
+
+	private static void save(File dir, List<EPackage> ePackages)
+			throws Exception {
+		ResourceSet resourceSet = createResourceSet();
+		for (int i = 0; i < ePackages.size(); i++) {
+			Resource resource = resourceSet.createResource(URI
+					.createFileURI(new File(dir, "large"
+							+ (i > 0 ? "-" + i : "") + ".ecore")
+							.getAbsolutePath()));
+			resource.getContents().add(ePackages.get(i));
+		}
+		for (Resource resource : resourceSet.getResources()) {
+			resource.save(Collections.EMPTY_MAP);
+		}
+	}
+
+	private static long loadFirst(File dir) {
+		long start = System.nanoTime();
+		Resource resource = createResourceSet().getResource(
+				URI.createFileURI(new File(dir, "large.ecore")
+						.getAbsolutePath()), true);
+		EPackage ePackage = (EPackage) resource.getContents().get(0);
+		Assert.assertNotNull(ePackage.getEClassifier("Class1"));
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	@Test
+	public void shard() throws Exception {
+		List<EPackage> shards = EcoreSharding.shard(createPackage(),
+				SHARD_SIZE);
+		Assert.assertEquals(CLASSES / SHARD_SIZE, shards.size());
+		for (EPackage shard : shards) {
+			Assert.assertTrue(shard.getEClassifiers().size() <= SHARD_SIZE);
+			// clusters are never split if they fit into a shard
+			for (Object eClassifier : shard.getEClassifiers()) {
+				for (EClass superType : ((EClass) eClassifier)
+						.getESuperTypes()) {
+					if (!superType.getName().equals("Class" + (CLASSES - 1))) {
+						Assert.assertSame(shard, superType.getEPackage());
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void loadTimes() throws Exception {
+		File monolithic = new File("./out/sharding/monolithic");
+		File sharded = new File("./out/sharding/sharded");
+		monolithic.mkdirs();
+		sharded.mkdirs();
+		save(monolithic, Collections.singletonList(createPackage()));
+		save(sharded, EcoreSharding.shard(createPackage(), SHARD_SIZE));
+
+		// the cross-document reference is resolved on demand
+		ResourceSet resourceSet = createResourceSet();
+		EPackage first = (EPackage) resourceSet.getResource(
+				URI.createFileURI(new File(sharded, "large.ecore")
+						.getAbsolutePath()), true).getContents().get(0);
+		EClass last = ((EClass) first.getEClassifier("Class1"))
+				.getESuperTypes().get(1);
+		Assert.assertFalse(last.eIsProxy());
+		Assert.assertEquals("Class" + (CLASSES - 1), last.getName());
+
+		// warm up the parser
+		loadFirst(monolithic);
+		loadFirst(sharded);
+		System.out.println(String.format(
+				"Loading one class of %d: monolithic %d ms, sharded %d ms",
+				CLASSES, loadFirst(monolithic), loadFirst(sharded)));
+	}
+
+	private static void convert(String... args) throws Exception {
+		OntologyConverter converter = OntologyConverter
+				.createConverter(OntologyConverter.parseArguments(args));
+		try {
+			converter.init();
+			converter.convert(OntologyConverter.parseArguments(args));
+		} finally {
+			converter.shutDown();
+		}
+	}
+
+	@Test
+	public void roundTrip() throws Exception {
+		String namespace = "http://example.org/shards#";
+		File dir = new File("./out/sharding/roundtrip");
+		File ecoreDir = new File(dir, "ecore");
+		ecoreDir.mkdirs();
+		File ontology = new File(dir, "shards.ttl");
+		Writer out = new OutputStreamWriter(new FileOutputStream(ontology),
+				"UTF-8");
+		try {
+			out.write("@prefix : <" + namespace + "> .\n");
+			out.write("@prefix owl: <http://www.w3.org/2002/07/owl#> .\n");
+			for (int i = 0; i < 30; i++) {
+				out.write(":Class" + i + " a owl:Class .\n");
+			}
+		} finally {
+			out.close();
+		}
+		// a shard of an earlier conversion with more shards
+		File stale = new File(ecoreDir, "shards-5.ecore");
+		new FileOutputStream(stale).close();
+
+		String binding = "shards=" + namespace;
+		convert("-b", binding, "-n", "10", "-d", ecoreDir.getPath(),
+				ontology.getPath());
+		Assert.assertFalse(stale.exists());
+		List<String> args = new ArrayList<String>(Arrays.asList("-b",
+				binding, "-r", new File(dir, "shards.owl").getPath()));
+		Set<String> nsURIs = new HashSet<String>();
+		for (int i = 0; i < 3; i++) {
+			File shard = new File(ecoreDir, "shards"
+					+ (i > 0 ? "-" + i : "") + ".ecore");
+			Assert.assertTrue(shard.exists());
+			args.add(shard.getPath());
+			// each shard can be registered by its namespace URI
+			EPackage ePackage = (EPackage) createResourceSet().getResource(
+					URI.createFileURI(shard.getAbsolutePath()), true)
+					.getContents().get(0);
+			Assert.assertTrue(nsURIs.add(ePackage.getNsURI()));
+			Assert.assertEquals(namespace, EcoreSharding.namespace(ePackage));
+		}
+		convert(args.toArray(new String[args.size()]));
+
+		// all classes keep the namespace of the original ontology
+		Repository repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		try {
+			RepositoryConnection conn = repository.getConnection();
+			try {
+				conn.add(new File(dir, "shards.owl"), namespace,
+						RDFFormat.RDFXML);
+				ValueFactory vf = conn.getValueFactory();
+				for (int i = 0; i < 30; i++) {
+					Result<Statement> stmts = conn.match(vf.createURI(
+							namespace, "Class" + i), RDF.TYPE, OWL.CLASS,
+							false);
+					try {
+						Assert.assertTrue("Class" + i, stmts.hasNext());
+					} finally {
+						stmts.close();
+					}
+				}
+				for (Statement stmt : conn.match(
+						(org.openrdf.model.Resource) null, null, null, false)
+						.asList()) {
+					Assert.assertFalse(stmt.getSubject().stringValue()
+							.contains("/shard"));
+				}
+			} finally {
+				conn.close();
+			}
+		} finally {
+			repository.shutDown();
+		}
+	}
+
+	@Test
+	public void unboundSuperClass() throws Exception {
+		String namespace = "http://example.org/bound#";
+		File dir = new File("./out/sharding/unbound");
+		File ecoreDir = new File(dir, "ecore");
+		ecoreDir.mkdirs();
+		File ontology = new File(dir, "bound.ttl");
+		Writer out = new OutputStreamWriter(new FileOutputStream(ontology),
+				"UTF-8");
+		try {
+			out.write("@prefix : <" + namespace + "> .\n");
+			out.write("@prefix other: <http://example.org/unbound#> .\n");
+			out.write("@prefix owl: <http://www.w3.org/2002/07/owl#> .\n");
+			out.write("@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n");
+			out.write("other:Base a owl:Class .\n");
+			for (int i = 0; i < 3; i++) {
+				out.write(":Class" + i + " a owl:Class ; "
+						+ "rdfs:subClassOf other:Base .\n");
+			}
+		} finally {
+			out.close();
+		}
+
+		// the package of the super class has no name and no shard files
+		convert("-b", "bound=" + namespace, "-n", "2", "-d", ecoreDir
+				.getPath(), ontology.getPath());
+		Assert.assertTrue(new File(ecoreDir, "bound.ecore").exists());
+		Assert.assertTrue(new File(ecoreDir, "bound-1.ecore").exists());
+	}
+}
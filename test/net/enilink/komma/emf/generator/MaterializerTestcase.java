@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+import net.enilink.vocab.rdf.RDF;
+import net.enilink.vocab.rdfs.RDFS;
+
+public class MaterializerTestcase {
+	private static final String NS = "http://example.org/inference#";
+
+	private static boolean contains(List<Statement> stmts, Resource subject,
+			URI predicate, Resource object, Resource context) {
+		for (Statement stmt : stmts) {
+			if (stmt.getSubject().equals(subject)
+					&& stmt.getPredicate().equals(predicate)
+					&& stmt.getObject().equals(object)
+					&& context.equals(stmt.getContext())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void inference() throws Exception {
+		Repository repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		RepositoryConnection conn = repository.getConnection();
+		try {
+			ValueFactory vf = conn.getValueFactory();
+			URI type = vf.createURI(RDF.NAMESPACE + "type");
+			URI subClassOf = vf.createURI(RDFS.NAMESPACE + "subClassOf");
+			URI subPropertyOf = vf.createURI(RDFS.NAMESPACE + "subPropertyOf");
+			URI domain = vf.createURI(RDFS.NAMESPACE + "domain");
+			URI a = vf.createURI(NS + "A"), b = vf.createURI(NS + "B"), c = vf
+					.createURI(NS + "C");
+			URI p = vf.createURI(NS + "p"), q = vf.createURI(NS + "q");
+			URI x = vf.createURI(NS + "x");
+			URI schema = vf.createURI(NS + "schema");
+			URI data = vf.createURI(NS + "data");
+
+			conn.add(a, subClassOf, b, schema);
+			conn.add(b, subClassOf, c, schema);
+			conn.add(p, subPropertyOf, q, schema);
+			conn.add(q, domain, a, schema);
+			conn.add(x, p, x, data);
+			conn.add(x, type, b, data);
+
+			List<Statement> light = new Materializer(Inference.LIGHT)
+					.infer(conn);
+			Assert.assertEquals(1, light.size());
+			Assert.assertTrue(contains(light, p, domain, a, schema));
+			// super classes stay direct to keep the ECore super types
+			Assert.assertFalse(contains(light, a, subClassOf, c, schema));
+
+			List<Statement> rdfs = new Materializer(Inference.RDFS)
+					.infer(conn);
+			Assert.assertTrue(rdfs.containsAll(light));
+			Assert.assertTrue(contains(rdfs, x, q, x, data));
+			Assert.assertTrue(contains(rdfs, x, type, a, data));
+			Assert.assertTrue(contains(rdfs, x, type, c, data));
+			// explicit statements are not inferred again
+			Assert.assertFalse(contains(rdfs, x, type, b, data));
+
+			Assert.assertTrue(new Materializer(Inference.NONE).infer(conn)
+					.isEmpty());
+		} finally {
+			conn.close();
+			repository.shutDown();
+		}
+	}
+}
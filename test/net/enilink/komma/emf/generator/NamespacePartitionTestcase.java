@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.BNodeImpl;
+import org.openrdf.model.impl.StatementImpl;
+import org.openrdf.model.impl.URIImpl;
+
+/**
+ * Partitions statements by the namespaces of their subjects.
+ */
+public class NamespacePartitionTestcase {
+	private static final String A = "http://example.org/a";
+
+	private static final String AB = "http://example.org/ab#";
+
+	private static final URI P = new URIImpl("http://example.org/p");
+
+	private final BNode node = new BNodeImpl("node");
+
+	private final Statement inA = new StatementImpl(new URIImpl(A + "#X"), P,
+			node);
+
+	private final Statement inAB = new StatementImpl(new URIImpl(AB + "Y"), P,
+			node);
+
+	private final Statement ofNode = new StatementImpl(node, P, new URIImpl(
+			AB + "Z"));
+
+	private NamespacePartition partition(boolean split) {
+		NamespacePartition partition = new NamespacePartition(Arrays.asList(
+				A, AB), split);
+		partition.add(ofNode);
+		partition.add(inA);
+		partition.add(inAB);
+		return partition;
+	}
+
+	@Test
+	public void namespaceBoundary() throws Exception {
+		Map<String, List<Statement>> partitions = partition(true)
+				.getPartitions();
+		// AB starts with A but is a namespace of its own
+		Assert.assertEquals(Arrays.asList(inA, ofNode), partitions.get(A));
+		Assert.assertEquals(Arrays.asList(inAB, ofNode), partitions.get(AB));
+	}
+
+	@Test
+	public void sharedBlankNodes() throws Exception {
+		// the closure of a shared blank node is contained only once
+		Assert.assertEquals(Arrays.asList(inA, inAB, ofNode), partition(false)
+				.getStatements());
+	}
+}
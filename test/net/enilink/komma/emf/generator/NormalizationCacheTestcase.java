@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Ensures that scoped and cached normalizations create the same ECore models
+ * as a full normalization.
+ */
+public class NormalizationCacheTestcase {
+	private static final String NAMESPACE = "http://example.org/normalization#";
+
+	private static final String BASE = "http://example.org/normalization/base#";
+
+	private static final String UNRELATED = "http://example.org/unrelated#";
+
+	/** records if the normalized repository was read from the cache */
+	private static class NormalizationMonitor extends ConversionMonitor {
+		final List<Boolean> cached = new ArrayList<Boolean>();
+
+		@Override
+		public void normalized(boolean cached, long nanos) {
+			this.cached.add(cached);
+		}
+	}
+
+	private File dir;
+
+	private List<File> sources = new ArrayList<File>();
+
+	@Before
+	public void createOntologies() throws Exception {
+		dir = new File("./out/normalization");
+		ConversionFixtures.delete(dir);
+		dir.mkdirs();
+
+		// each file is loaded into its own context
+		File base = new File(dir, "base.ttl");
+		ConversionFixtures.write(base, ConversionFixtures.PREFIXES
+				+ "@prefix : <" + BASE + "> .\n"
+				+ ":Named a owl:Class .\n"
+				+ ":name a owl:DatatypeProperty, owl:FunctionalProperty ; "
+				+ "rdfs:domain :Named ; rdfs:range xsd:string .\n");
+		File model = new File(dir, "model.ttl");
+		ConversionFixtures.write(model, ConversionFixtures.PREFIXES
+				+ "@prefix : <" + NAMESPACE + "> .\n"
+				+ "@prefix base: <" + BASE + "> .\n"
+				+ ":Node a owl:Class ; rdfs:subClassOf base:Named .\n"
+				+ ":Edge a owl:Class ; rdfs:subClassOf base:Named .\n"
+				+ ":source a owl:ObjectProperty ; rdfs:domain :Edge ; "
+				+ "rdfs:range :Node .\n");
+		File unrelated = new File(dir, "unrelated.ttl");
+		ConversionFixtures.write(unrelated, ConversionFixtures.PREFIXES
+				+ "@prefix : <" + UNRELATED + "> .\n"
+				+ ":Thing a owl:Class .\n"
+				+ ":Other a owl:Class ; rdfs:subClassOf :Thing .\n");
+		sources = Arrays.asList(base, model, unrelated);
+	}
+
+	private void convert(File output, boolean scoped, File cache,
+			ConversionMonitor monitor) throws Exception {
+		OntologyConverter converter = new OntologyConverter();
+		for (File source : sources) {
+			converter.addRdfSource(source.toURI().toURL());
+		}
+		converter.bindPackageToNamespace("normalization", NAMESPACE);
+		converter.setScopedNormalization(scoped);
+		converter.setCacheDirectory(cache);
+		converter.setMonitor(monitor);
+		try {
+			converter.init();
+			converter.createECore(output);
+		} finally {
+			converter.shutDown();
+		}
+	}
+
+	@Test
+	public void scopedNormalization() throws Exception {
+		File full = new File(dir, "full");
+		File scoped = new File(dir, "scoped");
+		convert(full, false, null, null);
+		convert(scoped, true, null, null);
+		ConversionFixtures.assertSameFiles(full, scoped);
+	}
+
+	@Test
+	public void cachedNormalization() throws Exception {
+		File cache = new File(dir, "cache");
+		NormalizationMonitor monitor = new NormalizationMonitor();
+
+		File uncached = new File(dir, "uncached");
+		convert(uncached, false, cache, monitor);
+		Assert.assertEquals(Arrays.asList(false), monitor.cached);
+
+		File cached = new File(dir, "cached");
+		convert(cached, false, cache, monitor);
+		Assert.assertEquals(Arrays.asList(false, true), monitor.cached);
+		ConversionFixtures.assertSameFiles(uncached, cached);
+
+		// the scope is part of the cache key
+		File scoped = new File(dir, "scoped-cached");
+		convert(scoped, true, cache, monitor);
+		Assert.assertEquals(Arrays.asList(false, true, false), monitor.cached);
+		ConversionFixtures.assertSameFiles(uncached, scoped);
+	}
+}
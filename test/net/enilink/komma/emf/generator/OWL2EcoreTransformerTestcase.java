@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.eclipse.emf.ecore.EAnnotation;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EEnum;
+import org.eclipse.emf.ecore.EEnumLiteral;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.sail.memory.MemoryStore;
+
+import net.enilink.komma.core.IEntity;
+import net.enilink.komma.core.IKommaManager;
+import net.enilink.komma.core.KommaModule;
+import net.enilink.komma.core.URIImpl;
+import net.enilink.komma.sesame.DecoratingSesameManagerFactory;
+
+/**
+ * Ensures that enumerations that are read with prefetched queries are equal
+ * to enumerations that are read through the entity proxies and that the
+ * results are only available after the transformation is finished. Compares
+ * the time to attach the features of wide classes one by one and in bulk.
+ */
+public class OWL2EcoreTransformerTestcase {
+	private static final String NS = "http://example.org/enumerations#";
+
+	/** number of features of the wide classes */
+	private static final int FEATURES = 20000;
+
+	private Repository repository;
+
+	private IKommaManager manager;
+
+	@Before
+	public void setUp() throws Exception {
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		RepositoryConnection conn = repository.getConnection();
+		try {
+			conn.add(new StringReader("@prefix : <" + NS + "> .\n"
+					+ "@prefix owl: <http://www.w3.org/2002/07/owl#> .\n"
+					+ "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n"
+					+ ":Color a owl:Class ; owl:oneOf (:Red :Green :Blue) .\n"
+					+ ":Red rdfs:label \"red\" ; rdfs:comment \"warm\" .\n"
+					+ ":Green rdfs:label \"green\", \"gruen\" ; "
+					+ "rdfs:isDefinedBy <" + NS + "> .\n"
+					+ ":Size a owl:Class ; owl:oneOf (\"small\" \"large\") .\n"
+					+ ":Shape a owl:Class .\n"
+					+ ":Square a owl:Class ; rdfs:subClassOf :Shape .\n"),
+					NS, RDFFormat.TURTLE);
+		} finally {
+			conn.close();
+		}
+		manager = new DecoratingSesameManagerFactory(new KommaModule(),
+				repository).createKommaManager();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		manager.close();
+		repository.shutDown();
+	}
+
+	private static OWL2EcoreTransformer createTransformer() {
+		Map<String, String> packages = new HashMap<String, String>();
+		packages.put(NS, "enumerations");
+		return new OWL2EcoreTransformer(new HashMap<String, EPackage>(),
+				packages);
+	}
+
+	private EPackage transform(boolean prefetched) throws Exception {
+		OWL2EcoreTransformer transformer = createTransformer();
+		if (prefetched) {
+			transformer.setQueryCache(new QueryCache(manager));
+		}
+		for (String name : new String[] { "Color", "Size" }) {
+			transformer.owl2ecore((IEntity) manager.find(URIImpl
+					.createURI(NS + name)));
+		}
+		transformer.finish();
+		return transformer.getEPackages().get(NS);
+	}
+
+	private static String describe(EEnum eEnum) {
+		StringBuilder description = new StringBuilder(eEnum.getName());
+		for (EEnumLiteral literal : eEnum.getELiterals()) {
+			description.append('\n').append(literal.getName()).append('=')
+					.append(literal.getValue());
+			for (EAnnotation annotation : literal.getEAnnotations()) {
+				description.append(' ').append(annotation.getSource())
+						.append(annotation.getDetails().map());
+			}
+		}
+		return description.toString();
+	}
+
+	@Test
+	public void prefetchedEnumerations() throws Exception {
+		EPackage entities = transform(false);
+		EPackage prefetched = transform(true);
+		for (String name : new String[] { "Color", "Size" }) {
+			EEnum expected = (EEnum) entities.getEClassifier(name);
+			Assert.assertNotNull(expected);
+			Assert.assertEquals(describe(expected), describe((EEnum) prefetched
+					.getEClassifier(name)));
+		}
+	}
+
+	@Test
+	public void finish() throws Exception {
+		OWL2EcoreTransformer transformer = createTransformer();
+		transformer.owl2ecore((IEntity) manager.find(URIImpl.createURI(NS
+				+ "Square")));
+		try {
+			transformer.getEPackages();
+			Assert.fail("The super type is only added by finish()");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		transformer.finish();
+		EPackage ePackage = transformer.getEPackages().get(NS);
+		EClass square = (EClass) ePackage.getEClassifier("Square");
+		Assert.assertEquals(Collections.singletonList(ePackage
+				.getEClassifier("Shape")), square.getESuperTypes());
+	}
+
+	private static List<EStructuralFeature> createFeatures() {
+		List<EStructuralFeature> eFeatures = new ArrayList<EStructuralFeature>();
+		for (int i = 0; i < FEATURES; i++) {
+			EAttribute eAttribute = EcoreFactory.eINSTANCE.createEAttribute();
+			eAttribute.setName("name" + i);
+			eFeatures.add(eAttribute);
+		}
+		return eFeatures;
+	}
+
+	private static EClass createClass() {
+		EClass eClass = EcoreFactory.eINSTANCE.createEClass();
+		eClass.setName("Wide");
+		return eClass;
+	}
+
+	@Test
+	public void wideClasses() throws Exception {
+		for (int run = 0; run < 2; run++) {
+			// one add per feature with a uniqueness check each
+			List<EStructuralFeature> eFeatures = createFeatures();
+			EClass single = createClass();
+			long start = System.nanoTime();
+			for (EStructuralFeature eFeature : eFeatures) {
+				single.getEStructuralFeatures().add(eFeature);
+			}
+			long singleTime = (System.nanoTime() - start) / 1000000;
+
+			// features are collected and attached by finish()
+			eFeatures = createFeatures();
+			EClass bulk = createClass();
+			OWL2EcoreTransformer transformer = createTransformer();
+			start = System.nanoTime();
+			for (EStructuralFeature eFeature : eFeatures) {
+				transformer.addFeature(bulk, eFeature);
+			}
+			transformer.finish();
+			long bulkTime = (System.nanoTime() - start) / 1000000;
+
+			Assert.assertEquals(eFeatures, bulk.getEStructuralFeatures());
+			// the first run warms up the JVM
+			if (run > 0) {
+				System.out.println(String.format(
+						"%d features: single adds %d ms, bulk %d ms",
+						FEATURES, singleTime, bulkTime));
+			}
+		}
+	}
+}
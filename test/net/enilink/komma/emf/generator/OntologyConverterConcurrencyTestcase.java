@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Runs several independent conversions in parallel to ensure that
+ * conversions do not share any mutable state and reports the wall time of
+ * serial and parallel runs.
+ */
+public class OntologyConverterConcurrencyTestcase {
+	private static final String NAMESPACE = "http://example.org/concurrency";
+
+	private static final int CLASSES = 200;
+
+	private Callable<File> ontologyConversion(final File ecore,
+			final File output) {
+		return new Callable<File>() {
+			public File call() throws Exception {
+				OntologyConverter converter = new OntologyConverter();
+				converter.addEcore(ecore.toURI().toURL());
+				converter.bindPackageToNamespace("concurrency", NAMESPACE);
+				try {
+					converter.init();
+					converter.createOntology(output);
+				} finally {
+					converter.shutDown();
+				}
+				return output;
+			}
+		};
+	}
+
+	private Callable<File> ecoreConversion(final File ontology,
+			final File output) {
+		return new Callable<File>() {
+			public File call() throws Exception {
+				OntologyConverter converter = new OntologyConverter();
+				converter.addRdfSource(ontology.toURI().toURL());
+				// the classes of the package are named NAMESPACE#name
+				converter.bindPackageToNamespace("concurrency", NAMESPACE
+						+ "#");
+				try {
+					converter.init();
+					converter.createECore(output);
+				} finally {
+					converter.shutDown();
+				}
+				return new File(output, "concurrency.ecore");
+			}
+		};
+	}
+
+	/**
+	 * Runs the given conversions with the given number of threads and
+	 * returns their outputs.
+	 */
+	private List<File> run(List<Callable<File>> conversions, int threads)
+			throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<File>> results = new ArrayList<Future<File>>();
+			for (Callable<File> conversion : conversions) {
+				results.add(executor.submit(conversion));
+			}
+			List<File> outputs = new ArrayList<File>();
+			for (Future<File> result : results) {
+				outputs.add(result.get());
+			}
+			return outputs;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static void assertSameContent(File expected, List<File> outputs)
+			throws IOException {
+		byte[] content = ConversionFixtures.read(expected);
+		Assert.assertTrue(content.length > 0);
+		for (File output : outputs) {
+			Assert.assertTrue("Outputs differ: " + output, Arrays.equals(
+					content, ConversionFixtures.read(output)));
+		}
+	}
+
+	/**
+	 * Runs the conversions once with a single thread and once with the given
+	 * number of threads, reports both wall times and asserts that all outputs
+	 * are equal to the given reference output.
+	 */
+	private void compare(String direction, File reference,
+			List<Callable<File>> serial, List<Callable<File>> parallel,
+			int threads) throws Exception {
+		long start = System.nanoTime();
+		List<File> serialOutputs = run(serial, 1);
+		long serialTime = (System.nanoTime() - start) / 1000000;
+		start = System.nanoTime();
+		List<File> parallelOutputs = run(parallel, threads);
+		long parallelTime = (System.nanoTime() - start) / 1000000;
+		System.out.println(String.format(
+				"%s, %d conversions: serial %d ms, %d threads %d ms "
+						+ "(speedup %.2f)", direction, serial.size(),
+				serialTime, threads, parallelTime, (double) serialTime
+						/ Math.max(1, parallelTime)));
+
+		assertSameContent(reference, serialOutputs);
+		assertSameContent(reference, parallelOutputs);
+	}
+
+	@Test
+	public void parallelConversions() throws Exception {
+		File dir = new File("./out/concurrency");
+		dir.mkdirs();
+		File ecore = ConversionFixtures.createEcore(new File(dir,
+				"concurrency.ecore"), "concurrency", NAMESPACE, CLASSES);
+
+		int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		int conversions = 2 * threads;
+
+		// ecore -> owl, the reference conversion also warms up the JVM
+		File serialOntology = run(
+				Collections.singletonList(ontologyConversion(ecore, new File(
+						dir, "reference.owl"))), 1).get(0);
+		List<Callable<File>> serial = new ArrayList<Callable<File>>();
+		List<Callable<File>> parallel = new ArrayList<Callable<File>>();
+		for (int i = 0; i < conversions; i++) {
+			serial.add(ontologyConversion(ecore, new File(dir, "serial-" + i
+					+ ".owl")));
+			parallel.add(ontologyConversion(ecore, new File(dir, "parallel-"
+					+ i + ".owl")));
+		}
+		compare("ecore -> owl", serialOntology, serial, parallel, threads);
+
+		// owl -> ecore
+		File serialEcore = run(
+				Collections.singletonList(ecoreConversion(serialOntology,
+						new File(dir, "reference"))), 1).get(0);
+		serial.clear();
+		parallel.clear();
+		for (int i = 0; i < conversions; i++) {
+			serial.add(ecoreConversion(serialOntology, new File(dir, "serial-"
+					+ i)));
+			parallel.add(ecoreConversion(serialOntology, new File(dir,
+					"parallel-" + i)));
+		}
+		compare("owl -> ecore", serialEcore, serial, parallel, threads);
+	}
+}
@@ -0,0 +1,336 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.xmi.impl.EcoreResourceFactoryImpl;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Runs large conversions in forked JVMs with fixed heap sizes. A conversion
+ * that runs out of memory or whose peak heap usage exceeds the ceiling of its
+ * direction fails the test.
+ * <p>
+ * The size of the generated inputs can be changed with the system property
+ * <code>memory.classes</code>, the ceilings are only checked for the default
+ * size. The class path of the forked JVMs is the class path of this JVM or
+ * the value of the system property <code>memory.classpath</code>. The tests
+ * are skipped if it does not contain the converter and its dependencies, e.g.
+ * if the tests are run as plug-in tests.
+ */
+public class OntologyConverterMemoryTestcase {
+	private static final String NAMESPACE = "http://example.org/memory#";
+
+	private static final String PEAK_HEAP = "peak heap: ";
+
+	private static final int DEFAULT_CLASSES = 20000;
+
+	private static final int CLASSES = Integer.getInteger("memory.classes",
+			DEFAULT_CLASSES);
+
+	/** peak heap of ECore to RDF conversions with the default size */
+	private static final long ECORE2OWL_CEILING = 384L * 1024 * 1024;
+
+	/** peak heap of RDF to ECore conversions with the default size */
+	private static final long OWL2ECORE_CEILING = 512L * 1024 * 1024;
+
+	/** classes that must be loadable by the forked JVMs */
+	private static final String[] REQUIRED_CLASSES = {
+			OntologyConverterMemoryTestcase.class.getName(),
+			OntologyConverter.class.getName(),
+			"org.apache.commons.cli.CommandLine",
+			"org.eclipse.emf.ecore.EPackage",
+			"org.openrdf.repository.sail.SailRepository",
+			"org.slf4j.LoggerFactory" };
+
+	private static String classpath;
+
+	private static File dir;
+
+	private static File ecore;
+
+	private static File ontology;
+
+	/**
+	 * Runs a conversion with the given arguments and prints the peak heap
+	 * usage of the JVM afterwards.
+	 */
+	public static void main(String[] args) throws Exception {
+		OntologyConverter.main(args);
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		System.out.println(PEAK_HEAP + peak);
+	}
+
+	/**
+	 * Returns <code>true</code> if all required classes can be loaded from
+	 * the given class path without the classes of this JVM.
+	 */
+	private static boolean isComplete(String classpath) {
+		List<URL> urls = new ArrayList<URL>();
+		try {
+			for (String entry : classpath.split(File.pathSeparator)) {
+				if (entry.length() > 0) {
+					urls.add(new File(entry).toURI().toURL());
+				}
+			}
+			ClassLoader cl = new URLClassLoader(urls.toArray(new URL[urls
+					.size()]), null);
+			for (String name : REQUIRED_CLASSES) {
+				Class.forName(name, false, cl);
+			}
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (LinkageError e) {
+			return false;
+		} catch (MalformedURLException e) {
+			return false;
+		}
+	}
+
+	@BeforeClass
+	public static void createInputs() throws Exception {
+		classpath = System.getProperty("memory.classpath", System
+				.getProperty("java.class.path"));
+		if (!isComplete(classpath)) {
+			System.out.println("Skipping memory tests, set memory.classpath "
+					+ "to the class path of the converter: " + classpath);
+			Assume.assumeTrue(false);
+		}
+
+		dir = new File("./out/memory");
+		dir.mkdirs();
+		// remove heap dumps of earlier versions of this test
+		File[] dumps = dir.listFiles();
+		for (File dump : dumps != null ? dumps : new File[0]) {
+			if (dump.getName().endsWith(".hprof")) {
+				dump.delete();
+			}
+		}
+		ecore = createEcore(new File(dir, "memory.ecore"));
+		ontology = createOntology(new File(dir, "memory.nt"));
+	}
+
+	private static File createEcore(File file) throws IOException {
+		EcoreFactory factory = EcoreFactory.eINSTANCE;
+		EPackage ePackage = factory.createEPackage();
+		ePackage.setName("memory");
+		ePackage.setNsPrefix("memory");
+		ePackage.setNsURI(NAMESPACE);
+
+		EClass previous = null;
+		for (int i = 0; i < CLASSES; i++) {
+			EClass eClass = factory.createEClass();
+			eClass.setName("Class" + i);
+			EAttribute name = factory.createEAttribute();
+			name.setName("name" + i);
+			name.setEType(EcorePackage.eINSTANCE.getEString());
+			eClass.getEStructuralFeatures().add(name);
+			if (previous != null) {
+				eClass.getESuperTypes().add(previous);
+				EReference ref = factory.createEReference();
+				ref.setName("ref" + i);
+				ref.setEType(previous);
+				ref.setUpperBound(-1);
+				eClass.getEStructuralFeatures().add(ref);
+			}
+			ePackage.getEClassifiers().add(eClass);
+			previous = eClass;
+		}
+
+		ResourceSet resourceSet = new ResourceSetImpl();
+		resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap()
+				.put("ecore", new EcoreResourceFactoryImpl());
+		Resource resource = resourceSet
+				.createResource(org.eclipse.emf.common.util.URI
+						.createFileURI(file.getAbsolutePath()));
+		resource.getContents().add(ePackage);
+		resource.save(Collections.EMPTY_MAP);
+		return file;
+	}
+
+	private static File createOntology(File file) throws IOException {
+		String type = "<http://www.w3.org/1999/02/22-rdf-syntax-ns#type>";
+		String owl = "http://www.w3.org/2002/07/owl#";
+		String rdfs = "http://www.w3.org/2000/01/rdf-schema#";
+		Writer out = new OutputStreamWriter(new FileOutputStream(file),
+				"UTF-8");
+		try {
+			for (int i = 0; i < CLASSES; i++) {
+				String clazz = "<" + NAMESPACE + "Class" + i + ">";
+				String prop = "<" + NAMESPACE + "prop" + i + ">";
+				out.write(clazz + " " + type + " <" + owl + "Class> .\n");
+				out.write(clazz + " <" + rdfs + "label> \"Class " + i
+						+ "\" .\n");
+				// multiple annotations with the same source
+				for (int j = 0; j < 3; j++) {
+					out.write(clazz + " <" + rdfs + "comment> \"Comment " + j
+							+ "\" .\n");
+				}
+				out.write(prop + " " + type + " <" + owl
+						+ "ObjectProperty> .\n");
+				out.write(prop + " <" + rdfs + "domain> " + clazz + " .\n");
+				if (i > 0) {
+					String superClass = "<" + NAMESPACE + "Class" + (i - 1)
+							+ ">";
+					out.write(clazz + " <" + rdfs + "subClassOf> "
+							+ superClass + " .\n");
+					out.write(prop + " <" + rdfs + "range> " + superClass
+							+ " .\n");
+				}
+			}
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Runs the conversion in a new JVM with the given maximum heap size.
+	 *
+	 * @return the peak heap usage in bytes
+	 */
+	private long fork(String heap, long ceiling, String... args)
+			throws Exception {
+		List<String> command = new ArrayList<String>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"),
+				"java").getPath());
+		command.add("-Xmx" + heap);
+		command.add("-cp");
+		command.add(classpath);
+		command.add(OntologyConverterMemoryTestcase.class.getName());
+		command.addAll(Arrays.asList(args));
+
+		Process process = new ProcessBuilder(command).redirectErrorStream(
+				true).start();
+		process.getOutputStream().close();
+		long peak = -1;
+		StringBuilder output = new StringBuilder();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				process.getInputStream()));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				output.append(line).append('\n');
+				if (line.startsWith(PEAK_HEAP)) {
+					peak = Long.parseLong(line.substring(PEAK_HEAP.length()));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		int exitCode = process.waitFor();
+		Assert.assertTrue("Conversion failed with " + heap + " heap:\n"
+				+ output, exitCode == 0 && peak >= 0);
+		System.out.println(String.format("%s heap, %d classes, %s: "
+				+ "peak heap %d MB", heap, CLASSES, args[2], peak
+				/ (1024 * 1024)));
+		if (CLASSES == DEFAULT_CLASSES) {
+			Assert.assertTrue("Peak heap " + peak / (1024 * 1024)
+					+ " MB exceeds ceiling of " + ceiling / (1024 * 1024)
+					+ " MB", peak <= ceiling);
+		}
+		return peak;
+	}
+
+	private void ecore2owl(String heap) throws Exception {
+		fork(heap, ECORE2OWL_CEILING, "-b", "memory=" + NAMESPACE, "-r",
+				new File(dir, "memory-" + heap + ".owl").getPath(), ecore
+						.getPath());
+	}
+
+	private long owl2ecore(String heap, String... options) throws Exception {
+		// e.g. ecore-1g-a for the options [-a]
+		StringBuilder name = new StringBuilder("ecore-" + heap);
+		for (String option : options) {
+			name.append(option);
+		}
+		List<String> args = new ArrayList<String>(Arrays.asList("-b",
+				"memory=" + NAMESPACE, "-d", new File(dir, name.toString())
+						.getPath(), ontology.getPath()));
+		args.addAll(Arrays.asList(options));
+		return fork(heap, OWL2ECORE_CEILING, args.toArray(new String[args
+				.size()]));
+	}
+
+	@Test
+	public void ecore2owlSmallHeap() throws Exception {
+		ecore2owl("256m");
+	}
+
+	@Test
+	public void ecore2owlLargeHeap() throws Exception {
+		ecore2owl("1g");
+	}
+
+	@Test
+	public void owl2ecoreSmallHeap() throws Exception {
+		owl2ecore("256m");
+	}
+
+	@Test
+	public void owl2ecoreLargeHeap() throws Exception {
+		owl2ecore("1g");
+	}
+
+	/**
+	 * Reports the peak heap and the file size of an ECore model with and
+	 * without merged annotations.
+	 */
+	@Test
+	public void mergedAnnotations() throws Exception {
+		long peak = owl2ecore("1g");
+		long mergedPeak = owl2ecore("1g", "-a");
+		long size = new File(dir, "ecore-1g/memory.ecore").length();
+		long mergedSize = new File(dir, "ecore-1g-a/memory.ecore")
+				.length();
+		System.out.println(String.format("annotations: peak heap %d MB, "
+				+ "file %d KB; merged: peak heap %d MB, file %d KB", peak
+				/ (1024 * 1024), size / 1024, mergedPeak / (1024 * 1024),
+				mergedSize / 1024));
+		Assert.assertTrue(mergedSize > 0 && mergedSize < size);
+	}
+}
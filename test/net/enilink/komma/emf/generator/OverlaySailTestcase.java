@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+/**
+ * Adds, removes and matches statements of the default and of named contexts
+ * through an {@link OverlaySail} and evaluates queries against the union of
+ * both sails.
+ */
+public class OverlaySailTestcase {
+	private static final String NS = "http://example.org/overlay#";
+
+	private Repository base;
+
+	private Repository overlay;
+
+	private RepositoryConnection baseConn;
+
+	private RepositoryConnection conn;
+
+	private URI s, p, o, graph;
+
+	@Before
+	public void setUp() throws Exception {
+		MemoryStore baseStore = new MemoryStore();
+		base = new SailRepository(baseStore);
+		base.initialize();
+		baseConn = base.getConnection();
+		ValueFactory vf = baseConn.getValueFactory();
+		s = vf.createURI(NS + "s");
+		p = vf.createURI(NS + "p");
+		o = vf.createURI(NS + "o");
+		graph = vf.createURI(NS + "graph");
+		// the base contains the statement within a named context only
+		baseConn.add(s, p, o, graph);
+
+		overlay = new SailRepository(new OverlaySail(baseStore,
+				new MemoryStore()));
+		overlay.initialize();
+		conn = overlay.getConnection();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		conn.close();
+		overlay.shutDown();
+		baseConn.close();
+		base.shutDown();
+	}
+
+	private static int count(RepositoryConnection conn, Resource... contexts)
+			throws Exception {
+		return conn.match((Resource) null, null, null, false, contexts)
+				.asList().size();
+	}
+
+	@Test
+	public void defaultContext() throws Exception {
+		Assert.assertEquals(1, count(conn));
+		Assert.assertEquals(0, count(conn, (Resource) null));
+
+		// the statement is not contained in the default context of the base
+		conn.add(s, p, o);
+		Assert.assertEquals(1, count(conn, (Resource) null));
+		Assert.assertEquals(1, count(conn, graph));
+		Assert.assertEquals(2, count(conn));
+
+		// adding statements of the base does not duplicate them
+		conn.add(s, p, o, graph);
+		Assert.assertEquals(1, count(conn, graph));
+		Assert.assertEquals(2, count(conn));
+
+		Assert.assertEquals(1, count(baseConn));
+	}
+
+	@Test
+	public void removeNamedContext() throws Exception {
+		conn.add(s, p, o);
+		conn.removeMatch(s, p, o, graph);
+		// only the statement of the named context is hidden
+		Assert.assertEquals(0, count(conn, graph));
+		Assert.assertEquals(1, count(conn, (Resource) null));
+		Assert.assertEquals(1, count(conn));
+
+		// adding it again shows the statement of the base
+		conn.add(s, p, o, graph);
+		Assert.assertEquals(1, count(conn, graph));
+		Assert.assertEquals(2, count(conn));
+
+		// the base is never modified
+		Assert.assertEquals(1, count(baseConn, graph));
+	}
+
+	@Test
+	public void removeAllContexts() throws Exception {
+		conn.add(s, p, o);
+		conn.removeMatch(s, p, o);
+		Assert.assertEquals(0, count(conn));
+		Assert.assertEquals(1, count(baseConn));
+
+		conn.add(s, p, o);
+		Assert.assertEquals(1, count(conn, (Resource) null));
+		Assert.assertEquals(0, count(conn, graph));
+	}
+
+	@Test
+	public void query() throws Exception {
+		ValueFactory vf = conn.getValueFactory();
+		URI q = vf.createURI(NS + "q");
+		conn.add(o, q, vf.createLiteral("x"));
+		conn.add(s, q, vf.createLiteral("y"));
+
+		// the join and the filter span statements of the base and the overlay
+		TupleQuery query = conn.prepareTupleQuery(QueryLanguage.SPARQL,
+				"SELECT ?a WHERE { ?a <" + p + "> ?b . ?b <" + q + "> ?c "
+						+ "FILTER (?c = \"x\") }");
+		Assert.assertEquals(1, query.evaluate().asList().size());
+		query.setBinding("a", s);
+		Assert.assertEquals(1, query.evaluate().asList().size());
+		query.setBinding("a", o);
+		Assert.assertEquals(0, query.evaluate().asList().size());
+	}
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+import net.enilink.komma.core.IEntity;
+import net.enilink.komma.core.IKommaManager;
+import net.enilink.komma.core.KommaModule;
+import net.enilink.komma.core.URIImpl;
+import net.enilink.komma.sesame.DecoratingSesameManagerFactory;
+
+/**
+ * Reuses prepared queries and ensures that reused queries do not keep the
+ * parameter bindings of earlier evaluations.
+ */
+public class QueryCacheTestcase {
+	private static final String NS = "http://example.org/queries#";
+
+	private static final String SELECT_PROPERTIES = "PREFIX rdfs: <"
+			+ RDFS.NAMESPACE + "> "
+			+ "SELECT ?prop WHERE { ?prop rdfs:domain ?clazz } "
+			+ "ORDER BY ?prop";
+
+	private Repository repository;
+
+	private IKommaManager manager;
+
+	@Before
+	public void setUp() throws Exception {
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		RepositoryConnection conn = repository.getConnection();
+		try {
+			ValueFactory vf = conn.getValueFactory();
+			conn.add(vf.createURI(NS + "a"), RDFS.DOMAIN, vf.createURI(NS
+					+ "A"));
+			conn.add(vf.createURI(NS + "b"), RDFS.DOMAIN, vf.createURI(NS
+					+ "B"));
+		} finally {
+			conn.close();
+		}
+		manager = new DecoratingSesameManagerFactory(new KommaModule(),
+				repository).createKommaManager();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		manager.close();
+		repository.shutDown();
+	}
+
+	private List<String> properties(QueryCache queries, Object... parameters) {
+		List<String> uris = new ArrayList<String>();
+		for (Object result : queries.evaluate(SELECT_PROPERTIES, null,
+				parameters)) {
+			uris.add(((IEntity) result).getURI().toString());
+		}
+		return uris;
+	}
+
+	private IEntity find(String name) {
+		return manager.find(URIImpl.createURI(NS + name));
+	}
+
+	@Test
+	public void reuse() throws Exception {
+		QueryCache queries = new QueryCache(manager);
+		Assert.assertEquals(Arrays.asList(NS + "a"), properties(queries,
+				"clazz", find("A")));
+		Assert.assertEquals(0, queries.getHits());
+		Assert.assertEquals(1, queries.getMisses());
+
+		// the prepared query is reused with a new binding
+		Assert.assertEquals(Arrays.asList(NS + "b"), properties(queries,
+				"clazz", find("B")));
+		Assert.assertEquals(1, queries.getHits());
+		Assert.assertEquals(1, queries.getMisses());
+	}
+
+	@Test
+	public void noStaleBindings() throws Exception {
+		QueryCache queries = new QueryCache(manager);
+		Assert.assertEquals(Arrays.asList(NS + "a"), properties(queries,
+				"clazz", find("A")));
+
+		// an evaluation without parameters does not see the earlier binding
+		Assert.assertEquals(Arrays.asList(NS + "a", NS + "b"), properties(
+				queries));
+		Assert.assertEquals(0, queries.getHits());
+		Assert.assertEquals(2, queries.getMisses());
+
+		Assert.assertEquals(Arrays.asList(NS + "a", NS + "b"), properties(
+				queries));
+		Assert.assertEquals(1, queries.getHits());
+	}
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.StatementCollector;
+
+/**
+ * Checks the detection of RDF formats and reports the parse and serialize
+ * throughput of the supported formats.
+ */
+public class RdfFormatsTestcase {
+	private static final String NAMESPACE = "http://example.org/formats#";
+
+	private static final int CLASSES = 20000;
+
+	private static RDFFormat sniff(String content) throws Exception {
+		return RdfFormats.sniff(new BufferedInputStream(
+				new ByteArrayInputStream(content.getBytes("UTF-8"))));
+	}
+
+	@Test
+	public void sniff() throws Exception {
+		Assert.assertEquals(RDFFormat.RDFXML,
+				sniff("<?xml version=\"1.0\"?>\n<rdf:RDF/>"));
+		Assert.assertEquals(RDFFormat.RDFXML, sniff("<rdf:RDF xmlns:rdf="
+				+ "\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"/>"));
+		Assert.assertEquals(RDFFormat.TURTLE,
+				sniff("@prefix owl: <http://www.w3.org/2002/07/owl#> .\n"));
+		Assert.assertEquals(RDFFormat.TURTLE, sniff("# comment\n"
+				+ "<http://example.org/a> a <http://example.org/B> .\n"));
+		Assert.assertEquals(RDFFormat.NTRIPLES, sniff("# comment\n"
+				+ "<http://example.org/a> <http://example.org/p> "
+				+ "<http://example.org/b> .\n_:n1 <http://example.org/p> "
+				+ "\"x\" .\n"));
+		Assert.assertEquals(RDFFormat.TURTLE, sniff(":a a owl:Class .\n"));
+		Assert.assertEquals(RDFFormat.TURTLE, sniff("[] a owl:Ontology .\n"));
+		Assert.assertNull(sniff("   "));
+		// unknown content is not mistaken for Turtle
+		Assert.assertNull(sniff("Some notes about the ontology.\n"));
+		Assert.assertNull(sniff("{\"key\": \"value\"}"));
+	}
+
+	@Test
+	public void forName() {
+		Assert.assertEquals(RDFFormat.NTRIPLES, RdfFormats.forName("ntriples"));
+		Assert.assertEquals(RDFFormat.TURTLE, RdfFormats.forName("ttl"));
+		Assert.assertEquals(RDFFormat.RDFXML, RdfFormats.forName("RDFXML"));
+		try {
+			RdfFormats.forName("unknown");
+			Assert.fail("Unknown formats must be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private List<Statement> createStatements() {
+		ValueFactory vf = new ValueFactoryImpl();
+		List<Statement> stmts = new ArrayList<Statement>();
+		URI previous = null;
+		for (int i = 0; i < CLASSES; i++) {
+			URI clazz = vf.createURI(NAMESPACE, "Class" + i);
+			stmts.add(vf.createStatement(clazz, RDF.TYPE, OWL.CLASS));
+			stmts.add(vf.createStatement(clazz, RDFS.LABEL, vf
+					.createLiteral("Class " + i)));
+			if (previous != null) {
+				BNode restriction = vf.createBNode();
+				stmts.add(vf.createStatement(clazz, RDFS.SUBCLASSOF,
+						restriction));
+				stmts.add(vf.createStatement(restriction, RDF.TYPE,
+						OWL.RESTRICTION));
+				stmts.add(vf.createStatement(restriction, OWL.ALLVALUESFROM,
+						previous));
+			}
+			previous = clazz;
+		}
+		return stmts;
+	}
+
+	/**
+	 * Writes and reads the same graph with each format and prints the
+	 * throughput in statements per second.
+	 */
+	@Test
+	public void throughput() throws Exception {
+		List<Statement> stmts = createStatements();
+		List<RDFFormat> formats = new ArrayList<RDFFormat>();
+		formats.add(RDFFormat.RDFXML);
+		formats.add(RDFFormat.TURTLE);
+		formats.add(RDFFormat.NTRIPLES);
+		if (RdfFormats.binary() != null) {
+			formats.add(RdfFormats.binary());
+		}
+		for (RDFFormat format : formats) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			long start = System.nanoTime();
+			RDFWriter writer = Rio.createWriter(format, out);
+			writer.startRDF();
+			writer.handleNamespace("ex", NAMESPACE);
+			for (Statement stmt : stmts) {
+				writer.handleStatement(stmt);
+			}
+			writer.endRDF();
+			long written = System.nanoTime();
+
+			byte[] data = out.toByteArray();
+			Assert.assertEquals(format, RdfFormats.sniff(data, Math.min(
+					data.length, RdfFormats.SNIFF_LENGTH)));
+
+			RDFParser parser = Rio.createParser(format);
+			StatementCollector collector = new StatementCollector();
+			parser.setRDFHandler(collector);
+			parser.parse(new ByteArrayInputStream(data), "");
+			long parsed = System.nanoTime();
+			Assert.assertEquals(stmts.size(), collector.getStatements()
+					.size());
+
+			System.out.println(String.format(
+					"%-10s %9d bytes, serialize %8.0f stmts/s, parse %8.0f stmts/s",
+					format.getName(), data.length, rate(stmts.size(), start,
+							written), rate(stmts.size(), written, parsed)));
+		}
+	}
+
+	private static double rate(int count, long start, long end) {
+		return count / ((end - start) / 1e9);
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class RemoteSourceCacheTestcase {
+	private static final String ETAG = "\"v1\"";
+
+	private static final String ONTOLOGY = "<http://example.org/test#A> "
+			+ "<http://www.w3.org/1999/02/22-rdf-syntax-ns#type> "
+			+ "<http://www.w3.org/2002/07/owl#Class> .\n";
+
+	private HttpServer server;
+
+	private AtomicInteger downloads = new AtomicInteger();
+
+	private AtomicInteger revalidations = new AtomicInteger();
+
+	private File cacheDir;
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				if (ETAG.equals(exchange.getRequestHeaders().getFirst(
+						"If-None-Match"))) {
+					revalidations.incrementAndGet();
+					exchange.sendResponseHeaders(304, -1);
+				} else {
+					downloads.incrementAndGet();
+					byte[] data = ONTOLOGY.getBytes("UTF-8");
+					exchange.getResponseHeaders().set("ETag", ETAG);
+					exchange.sendResponseHeaders(200, data.length);
+					OutputStream out = exchange.getResponseBody();
+					out.write(data);
+					out.close();
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+
+		cacheDir = new File("./out/remote-cache");
+		File[] files = cacheDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	private List<URL> urls(int count) throws Exception {
+		List<URL> urls = new ArrayList<URL>();
+		for (int i = 0; i < count; i++) {
+			urls.add(new URL("http://localhost:"
+					+ server.getAddress().getPort() + "/ontology" + i + ".nt"));
+		}
+		return urls;
+	}
+
+	@Test
+	public void conditionalRequests() throws Exception {
+		List<URL> urls = urls(10);
+
+		Map<URL, File> files = new RemoteSourceCache(cacheDir).fetchAll(urls,
+				4);
+		Assert.assertEquals(10, files.size());
+		Assert.assertEquals(10, downloads.get());
+		for (File file : files.values()) {
+			Assert.assertEquals(ONTOLOGY.length(), file.length());
+		}
+
+		// second run only revalidates the cached copies
+		files = new RemoteSourceCache(cacheDir).fetchAll(urls, 4);
+		Assert.assertEquals(10, files.size());
+		Assert.assertEquals(10, downloads.get());
+		Assert.assertEquals(10, revalidations.get());
+	}
+
+	@Test
+	public void offline() throws Exception {
+		List<URL> urls = urls(2);
+		new RemoteSourceCache(cacheDir).fetch(urls.get(0));
+
+		RemoteSourceCache cache = new RemoteSourceCache(cacheDir);
+		cache.setOffline(true);
+		Assert.assertTrue(cache.fetch(urls.get(0)).exists());
+		Assert.assertEquals(1, downloads.get() + revalidations.get());
+
+		try {
+			cache.fetch(urls.get(1));
+			Assert.fail("Uncached source must not be fetched in offline mode");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
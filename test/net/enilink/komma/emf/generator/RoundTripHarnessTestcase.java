@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Fraunhofer IWU and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Fraunhofer IWU - initial API and implementation
+ *******************************************************************************/
+package net.enilink.komma.emf.generator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Runs the round trip of the GMF notation model.
+ */
+public class RoundTripHarnessTestcase {
+	@Test
+	public void notation() throws Exception {
+		File notation = new File(
+				"../net.enilink.komma.gmf.notation/META-INF/ontologies/notation.ecore");
+		RoundTripHarness harness = new RoundTripHarness();
+		harness.run(Collections.singleton(notation.getAbsolutePath()));
+		harness.report(System.out);
+
+		// the round trip may add helper classes, but it must not lose
+		// elements of the original model
+		List<RoundTripHarness.Difference> missing = new ArrayList<RoundTripHarness.Difference>();
+		for (RoundTripHarness.Difference difference : harness
+				.getDifferences()) {
+			if (difference.getKind() == RoundTripHarness.Kind.MISSING) {
+				missing.add(difference);
+			}
+		}
+		Assert.assertTrue("Missing elements: " + missing, missing.isEmpty());
+	}
+}